@@ -0,0 +1,80 @@
+package com.example.persometer.steps;
+
+import com.example.persometer.traces.TraceFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+//accelerometer input for the benchmarks: either synthetic, looking like a person walking
+//with the phone in a pocket, or loaded from a recorded trace
+public class GaitSignal {
+    private static final float GRAVITY = 9.81f;
+    private static final double CADENCE_HZ = 1.8;   //steps per second of an average walk
+    private static final double NOISE = 0.3;
+
+    public final long[] timestampsNs;
+    public final float[] xyz;   //x,y,z of sample i are at 3 * i, 3 * i + 1, 3 * i + 2
+    public final int expectedSteps;   //steps walked in the signal, -1 if they are not known
+
+    private GaitSignal(long[] timestampsNs, float[] xyz, int expectedSteps) {
+        this.timestampsNs = timestampsNs;
+        this.xyz = xyz;
+        this.expectedSteps = expectedSteps;
+    }
+
+    public int size() {
+        return timestampsNs.length;
+    }
+
+    //generates samples at rateHz, one fixed seed so every run gets the same signal
+    public static GaitSignal walk(int rateHz, int samples) {
+        Random random = new Random(42);
+        long periodNs = 1000000000L / rateHz;
+        long[] timestampsNs = new long[samples];
+        float[] xyz = new float[3 * samples];
+
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / rateHz;
+            double phase = 2 * Math.PI * CADENCE_HZ * t;
+            timestampsNs[i] = i * periodNs;
+            xyz[3 * i] = (float) (1.5 * Math.sin(phase) + NOISE * random.nextGaussian());
+            xyz[3 * i + 1] = (float) (0.5 * Math.cos(phase) + NOISE * random.nextGaussian());
+            xyz[3 * i + 2] = (float) (GRAVITY + 3 * Math.sin(2 * phase) + NOISE * random.nextGaussian());
+        }
+        return new GaitSignal(timestampsNs, xyz, -1);
+    }
+
+    //like walk, but the body bounces exactly once per step and sways sideways once per stride of two steps,
+    //so the steps walked are known and an engine's error can be measured
+    public static GaitSignal walkSteps(int rateHz, int samples) {
+        Random random = new Random(42);
+        long periodNs = 1000000000L / rateHz;
+        long[] timestampsNs = new long[samples];
+        float[] xyz = new float[3 * samples];
+
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / rateHz;
+            double phase = 2 * Math.PI * CADENCE_HZ * t;
+            timestampsNs[i] = i * periodNs;
+            xyz[3 * i] = (float) (1.5 * Math.sin(phase / 2) + NOISE * random.nextGaussian());
+            xyz[3 * i + 1] = (float) (0.5 * Math.cos(phase / 2) + NOISE * random.nextGaussian());
+            xyz[3 * i + 2] = (float) (GRAVITY + 3 * Math.sin(phase) + NOISE * random.nextGaussian());
+        }
+        return new GaitSignal(timestampsNs, xyz, (int) (CADENCE_HZ * samples / rateHz));
+    }
+
+    //loads a whole recorded trace into memory
+    public static GaitSignal recorded(File path) throws IOException {
+        TraceFile trace = new TraceFile(path);
+        try {
+            int samples = (int) trace.size();
+            long[] timestampsNs = new long[samples];
+            float[] xyz = new float[3 * samples];
+            trace.read(0, timestampsNs, xyz, samples);
+            return new GaitSignal(timestampsNs, xyz, -1);
+        } finally {
+            trace.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.persometer.steps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+//measures the SensorFilter helpers on the array sizes StepDetector works with
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorFilterBenchmark {
+
+    //100 and 500 are the velocity and accelerometer windows at 500Hz, 65536 a large buffer for the bulk reductions
+    @Param({"100", "500", "65536"})
+    public int ringSize;
+
+    private float[] ring;
+    private float[] a;
+    private float[] b;
+    private float[] out = new float[3];
+
+    @Setup
+    public void setUp() {
+        GaitSignal signal = GaitSignal.walk(100, ringSize);
+        ring = new float[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = signal.xyz[3 * i + 2];
+        }
+        a = new float[]{signal.xyz[0], signal.xyz[1], signal.xyz[2]};
+        b = new float[]{signal.xyz[3], signal.xyz[4], signal.xyz[5]};
+    }
+
+    @Benchmark
+    public float sum() {
+        return SensorFilter.sum(ring);
+    }
+
+    @Benchmark
+    public float bulkSum() {
+        return SensorFilter.sum(ring, 0, ring.length);
+    }
+
+    @Benchmark
+    public float norm() {
+        return SensorFilter.norm(ring);
+    }
+
+    @Benchmark
+    public float bulkNorm() {
+        return SensorFilter.norm(ring, 0, ring.length);
+    }
+
+    @Benchmark
+    public float dot() {
+        return SensorFilter.dot(a, b);
+    }
+
+    @Benchmark
+    public void cross(Blackhole blackhole) {
+        blackhole.consume(SensorFilter.cross(a, b));
+    }
+
+    @Benchmark
+    public float[] crossInto() {
+        return SensorFilter.cross(a, b, out);
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        blackhole.consume(SensorFilter.normalize(a));
+    }
+
+    @Benchmark
+    public float[] normalizeInto() {
+        return SensorFilter.normalizeInto(a, out);
+    }
+}
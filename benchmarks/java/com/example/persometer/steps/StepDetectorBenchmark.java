@@ -0,0 +1,107 @@
+package com.example.persometer.steps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//measures the step engines per sample: every invocation feeds BLOCK samples,
+//so the reported time and the gc profiler's allocation are per sample
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepDetectorBenchmark {
+    private static final int BLOCK = 1000;
+
+    @Param({"50", "100", "200", "500"})
+    public int rateHz;
+
+    @Param({StepEngines.WINDOW, StepEngines.EMA, StepEngines.PEAK})
+    public String engine;
+
+    //path of a recorded trace (-p trace=...), replaces the synthetic signal and rateHz when set
+    @Param({""})
+    public String trace;
+
+    private GaitSignal signal;
+    private StepEngine detector;
+    private int position;
+    private long offsetNs;   //added to the timestamps, grows by loopNs on every replay so the time never goes back
+    private long loopNs;     //length of one replay of the signal
+    private long[] shiftedNs;   //the signal's timestamps with offsetNs added, filled a batch at a time
+    private int steps;
+
+    @Setup
+    public void setUp() throws IOException {
+        //ten minutes of walking or the recorded trace, replayed in a loop
+        if (trace.isEmpty()) {
+            signal = GaitSignal.walk(rateHz, rateHz * 600);
+        } else {
+            signal = GaitSignal.recorded(new File(trace));
+        }
+        detector = StepEngines.create(engine);
+        detector.registerListener(new StepListener() {
+            @Override
+            public void step(long timeNs) {
+                steps++;
+            }
+        });
+        position = 0;
+        offsetNs = 0;
+        shiftedNs = new long[signal.size()];
+        long spanNs = signal.timestampsNs[signal.size() - 1] - signal.timestampsNs[0];
+        loopNs = spanNs + spanNs / (signal.size() - 1);   //one mean interval after the last sample
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int updateAccel() {
+        long[] timestampsNs = signal.timestampsNs;
+        float[] xyz = signal.xyz;
+        for (int n = 0; n < BLOCK; n++) {
+            int i = nextPosition();
+            detector.updateAccel(timestampsNs[i] + offsetNs, xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+        }
+        return steps;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int updateAccelBatch() {
+        if (position + BLOCK > signal.size()) {
+            position = 0;
+            offsetNs += loopNs;
+        }
+        //copying the timestamps costs little next to the detection, it keeps them growing across replays
+        long[] timestampsNs = signal.timestampsNs;
+        for (int i = position; i < position + BLOCK; i++) {
+            shiftedNs[i] = timestampsNs[i] + offsetNs;
+        }
+        detector.updateAccelBatch(shiftedNs, signal.xyz, position, BLOCK);
+        position += BLOCK;
+        return steps;
+    }
+
+    private int nextPosition() {
+        if (position == signal.size()) {
+            position = 0;
+            offsetNs += loopNs;
+        }
+        return position++;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.persometer.steps;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+//runs every step engine on the same input and prints CPU time per sample, state size and step error,
+//so the cheapest engine that is accurate enough can be chosen
+//usage: StepEngineComparison [recorded trace]...
+//without arguments the synthetic walk with a known step count (GaitSignal.walkSteps) at 25, 50, 100, 200
+//and 500Hz is used; recorded traces have no
+//known step count, their error is relative to the window engine
+public class StepEngineComparison {
+    private static final int WARMUP_SAMPLES = 2000000;   //lets the JIT compile the engine before it is measured
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<GaitSignal> signals = new ArrayList<>();
+        if (args.length == 0) {
+            for (int rateHz : new int[]{25, 50, 100, 200, 500}) {
+                names.add("walk " + rateHz + "Hz");
+                signals.add(GaitSignal.walkSteps(rateHz, rateHz * 600));
+            }
+        } else {
+            for (String arg : args) {
+                names.add(new File(arg).getName());
+                signals.add(GaitSignal.recorded(new File(arg)));
+            }
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.println("input\tengine\tcpu ns/sample\tstate bytes\tsteps\texpected\terror %");
+        for (int s = 0; s < signals.size(); s++) {
+            GaitSignal signal = signals.get(s);
+            int expected = signal.expectedSteps >= 0 ? signal.expectedSteps : run(StepEngines.WINDOW, signal).steps;
+
+            for (String engine : StepEngines.names()) {
+                for (long warm = 0; warm < WARMUP_SAMPLES; warm += signal.size()) {
+                    run(engine, signal);
+                }
+                //the fastest run is the one least disturbed by the rest of the machine
+                long bestCpuNs = Long.MAX_VALUE;
+                Run result = null;
+                for (int i = 0; i < MEASURED_RUNS; i++) {
+                    long start = threads.getCurrentThreadCpuTime();
+                    result = run(engine, signal);
+                    bestCpuNs = Math.min(bestCpuNs, threads.getCurrentThreadCpuTime() - start);
+                }
+
+                double error = expected == 0 ? 0 : 100.0 * (result.steps - expected) / expected;
+                System.out.printf("%s\t%s\t%.1f\t%d\t%d\t%d\t%+.1f%n", names.get(s), engine,
+                        (double) bestCpuNs / signal.size(), result.stateBytes, result.steps, expected, error);
+            }
+        }
+    }
+
+    private static class Run {
+        int steps;
+        int stateBytes;
+    }
+
+    private static Run run(String engine, GaitSignal signal) {
+        final Run run = new Run();
+        StepEngine detector = StepEngines.create(engine);
+        detector.registerListener(new StepListener() {
+            @Override
+            public void step(long timeNs) {
+                run.steps++;
+            }
+        });
+        detector.updateAccelBatch(signal.timestampsNs, signal.xyz, 0, signal.size());
+        run.stateBytes = detector.stateBytes();
+        return run;
+    }
+}
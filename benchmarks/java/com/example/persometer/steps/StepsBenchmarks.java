@@ -0,0 +1,31 @@
+package com.example.persometer.steps;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+//runs every benchmark of the steps package with the gc profiler (gc.alloc.rate.norm = bytes per sample)
+//and writes the results as JSON, by default into build/jmh/steps.json
+public class StepsBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        File resultFile = new File(args.length > 0 ? args[0] : "build/jmh/steps.json");
+        resultFile.getAbsoluteFile().getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(StepDetectorBenchmark.class.getSimpleName())
+                .include(SensorFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getPath())
+                .build();
+
+        new Runner(options).run();
+    }
+}
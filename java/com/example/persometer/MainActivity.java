@@ -2,13 +2,17 @@ package com.example.persometer;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.Manifest;
 import android.app.Dialog;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -18,29 +22,33 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+
 import com.example.persometer.helpers.FirebaseHelper;
-import com.example.persometer.steps.StepDetector;
-import com.example.persometer.steps.StepListener;
+import com.example.persometer.metrics.StartupTimer;
+import com.example.persometer.steps.StepPublisher;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.concurrent.Executor;
 
-public class MainActivity extends AppCompatActivity implements SensorEventListener, StepListener {
+//shows the steps counted by StepCounterService, which keeps counting when the activity is gone
+public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
     private static final String TEXT_SAVED_STEPS = " saved";
     private static final String TEXT_EMPTY = "";
     private static final int ERROR_DIALOG_REQUEST = 9001;
     private static final int GOAL = 1000;
+    private static final int ACTIVITY_RECOGNITION_REQUEST = 9002;
+    private static final long UI_UPDATE_INTERVAL_MS = 16;   //steps are shown at most once per frame
 
-    private boolean PersometerStarted = false;  //persometer is started flag (default: false)
     private int numSteps, saved, weight, height;
 
-    private StepDetector simpleStepDetector;
-    private FirebaseHelper FBHelper = new FirebaseHelper(); //creates a FirebaseHelper object used for Android app-Firebase communication
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private StepCounterService counter;   //null while the service is not bound
+    private StepPublisher.Subscription displaySubscription;
 
     private TextView TvSteps, TvSavedSteps, TvCal, TvKm, TvProgress, TvCongrats1, TvCongrats2;
     private EditText EtWeight, EtHeight;
@@ -52,14 +60,13 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-
-        //gets an instance of the SensorManager
-        SensorManager sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        Sensor accel = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-
-        //creates a StepDetector for counting steps
-        simpleStepDetector = new StepDetector();
-        simpleStepDetector.registerListener(this);
+        StartupTimer.COLD_START.mark("content view set");
+        getWindow().getDecorView().post(new Runnable() {
+            @Override
+            public void run() {
+                StartupTimer.COLD_START.mark("first frame");   //runs right after the first traversal of the layout
+            }
+        });
 
         TvSteps = (TextView) findViewById(R.id.tv_steps);
         TvSavedSteps = (TextView) findViewById(R.id.tv_stepsSaved);
@@ -72,9 +79,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         EtHeight = (EditText) findViewById(R.id.edit_height);
         ProgBar = (ProgressBar) findViewById(R.id.progressBar);
 
-        //registers the accelerometer's listener
-        sensorManager.registerListener(MainActivity.this, accel, SensorManager.SENSOR_DELAY_FASTEST);
-
         //map is requested
         if (isServicesOK()) {
             initMap();   //map can be initialised through the map button
@@ -84,10 +88,11 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         BtnStart.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View arg0) {
-                PersometerStarted = true;   //flag is set to true
-                BtnStart.setVisibility(View.INVISIBLE);   //button becomes invisible from now on
-                LinearLayout layout = (LinearLayout) findViewById(R.id.layout_all);
-                layout.setVisibility(View.VISIBLE);      //the rest of the layout is visible from now on
+                if (counter == null) {
+                    return;
+                }
+                counter.startCounting();   //the service counts from now on, in the foreground if allowed
+                showCounting();
                 getInfoFromFB();     //data is being updated on the Android app
             }
         });
@@ -96,7 +101,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         BtnForceDBUpdate.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                saveSteps();   //steps that have been made so far are stored into Firebase
+                if (counter != null && counter.getFirebaseHelper() != null) {
+                    counter.saveSteps();   //steps that have been made so far are stored into Firebase
+                    counter.getFirebaseHelper().flush();
+                }
             }
         });
 
@@ -104,6 +112,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         BtnUpdate.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View arg0) {
+                if (counter == null || counter.getFirebaseHelper() == null) {
+                    return;
+                }
+                FirebaseHelper FBHelper = counter.getFirebaseHelper();
                 try {
                     //weight input is stored into Firebase and hint is updated with the new value
                     FBHelper.inputWeight(Integer.parseInt(EtWeight.getText().toString()));
@@ -128,73 +140,95 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         });
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-    }
-
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        //if accelerometer sensor's state changes, a possible new step is being detected
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            simpleStepDetector.updateAccel(
-                    event.timestamp, event.values[0], event.values[1], event.values[2]);
-        }
-    }
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            counter = ((StepCounterService.LocalBinder) binder).getService();
+            StartupTimer.COLD_START.mark("service bound");
+
+            //the service tells about saves, new days and the stored values being opened,
+            //the count itself is shown at most once per frame
+            counter.setListener(new StepCounterService.Listener() {
+                @Override
+                public void stepsChanged() {
+                    getInfoFromFB();
+                }
+            });
+            displaySubscription = counter.getStepPublisher().subscribeCount(new StepPublisher.CountSubscriber() {
+                @Override
+                public void onCount(long totalSteps, long lastStepTimeNs) {
+                    showSteps();
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    mainHandler.postDelayed(command, UI_UPDATE_INTERVAL_MS);
+                }
+            });
 
-    //step counting
-    @Override
-    public void step(long timeNs) {
-        //steps are not counted unless BtnStart was pressed
-        if (PersometerStarted) {
-            if (numSteps < saved) {
-                numSteps = saved;   //greatest value is set as starting point in step counting
+            //the step sensors of the sensor hub need the user's permission
+            if (counter.needsActivityRecognition()) {
+                ActivityCompat.requestPermissions(MainActivity.this,
+                        new String[]{Manifest.permission.ACTIVITY_RECOGNITION}, ACTIVITY_RECOGNITION_REQUEST);
             }
 
-            //if movement is detected, a step is being added
-            numSteps++;
-            changeProgress();    //ProgressBar is updated
-            TvSteps.setText(TEXT_EMPTY + numSteps);    //new steps number is displayed
-
-            //steps are stored into Firebase if numSteps is a multiple of 100
-            if (numSteps % 100 == 0) {
-                saveSteps();
-                Log.d(TAG, "After saveSteps() from steps %50");
+            if (counter.isCounting()) {
+                showCounting();
             }
+            getInfoFromFB();
+        }
 
-            //steps are stored into Firebase if it is just before midnight
-            String currentTime = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date());
-            if (currentTime.equals("23:59:59")) {
-                saveSteps();
-                Log.d(TAG, "After saveSteps() from time 23:59:59");
-                numSteps = 0;
-            }
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            unsubscribe();
+        }
+    };
+
+    //stops the updates from the service
+    private void unsubscribe() {
+        if (counter != null) {
+            counter.setListener(null);
+            displaySubscription.cancel();
+            counter = null;
         }
     }
 
-    //results are taken from Firebase and displayed
-    private void getInfoFromFB() {
-        if (numSteps < FBHelper.getSteps()) {
-            numSteps = FBHelper.getSteps();
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        //the accelerometer counted until the user answered, now the step counter takes over
+        if (requestCode == ACTIVITY_RECOGNITION_REQUEST && grantResults.length > 0
+                && grantResults[0] == PackageManager.PERMISSION_GRANTED && counter != null) {
+            counter.restartStepSource();
         }
+    }
 
-        weight = FBHelper.getWeight();
-        height = FBHelper.getHeight();
+    //the start button gives way to the rest of the layout
+    private void showCounting() {
+        BtnStart.setVisibility(View.INVISIBLE);   //button becomes invisible from now on
+        LinearLayout layout = (LinearLayout) findViewById(R.id.layout_all);
+        layout.setVisibility(View.VISIBLE);      //the rest of the layout is visible from now on
+    }
 
-        displayEverything();
+    //shows the count of the service after new steps
+    private void showSteps() {
+        if (counter == null || !counter.isCounting() || counter.getFirebaseHelper() == null) {
+            return;
+        }
+        numSteps = counter.getSteps();
+        changeProgress();    //ProgressBar is updated
+        TvSteps.setText(TEXT_EMPTY + numSteps);    //new steps number is displayed
     }
 
-    //steps are being saved
-    private void saveSteps() {
-        //greatest value is stored into Firebase
-        if (numSteps > FBHelper.getSteps()) {
-            FBHelper.inputSteps(numSteps);
-            saved = numSteps;               //steps saved value is updated
-        } else {
-            numSteps = FBHelper.getSteps();
-            saved = numSteps;               //steps saved value is updated
+    //results are taken from Firebase and displayed
+    private void getInfoFromFB() {
+        if (counter == null || counter.getFirebaseHelper() == null) {
+            return;   //shown once the service opened the stored values
         }
-        weight = FBHelper.getWeight();    //weight is read from Firebase
-        height = FBHelper.getHeight();    //height is read from Firebase
+        counter.refreshSteps();
+
+        weight = counter.getFirebaseHelper().getWeight();
+        height = counter.getFirebaseHelper().getHeight();
 
         displayEverything();
     }
@@ -206,7 +240,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             @Override
             public void onClick(View arg0) {
                 Intent intent = new Intent(MainActivity.this, MapsActivity.class);
-                moveTaskToBack(true);
                 startActivityForResult(intent, numSteps);
             }
         });
@@ -232,11 +265,18 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
     //all data and calculated results are displayed
     public void displayEverything() {
+        if (counter == null || counter.getFirebaseHelper() == null) {
+            return;   //shown once the service is bound and opened the stored values
+        }
+        numSteps = counter.getSteps();
+        saved = counter.getSaved();
+
         Log.d(TAG, "displayEverything() ==> weight: " + weight);
         Log.d(TAG, "displayEverything() ==> height: " + height);
         Log.d(TAG, "displayEverything() ==> steps: " + numSteps);
         Log.d(TAG, "displayEverything() ==> saved steps: " + saved);
 
+        FirebaseHelper FBHelper = counter.getFirebaseHelper();
         double cal = FBHelper.getCalories();    //gets the number of cals based on the user's saved steps, weight and height
         double km = FBHelper.getKm();           //gets the number of kms based on the user's saved steps
 
@@ -248,14 +288,19 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         EtHeight.setHint(height + " cm");                    //Sets hint in EditText of the user's current height
 
         changeProgress();                   //Updates the progress in ProgressBar
+
+        //the first time the stored values are shown ends the cold start
+        if (StartupTimer.COLD_START.elapsedNs("stored values shown") < 0) {
+            StartupTimer.COLD_START.mark("stored values shown");
+            reportFullyDrawn();
+            Log.d(TAG, "Cold start:\n" + StartupTimer.COLD_START);
+        }
     }
 
     private void changeProgress() {
         //Converts progress in percentage
         int percentage = (int) Math.round((numSteps * 100) / GOAL);
 
-        Log.d(TAG, "Percentage = " + percentage);
-
         TvProgress.setText(percentage + "%");    //Displays the numeric percentage in TextView
         ProgBar.setProgress(percentage);         //Displays the visual percentage in ProgressBar
         if (percentage >= 100) {                 //When the goal is achieved, it displays a congratulation text
@@ -267,35 +312,25 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     @Override
     protected void onStart() {
         super.onStart();
-        getInfoFromFB();   //updates from Firebase
-    }
-
-    protected void onRestart() {
-        super.onRestart();
-        getInfoFromFB();   //updates from Firebase
+        //the service lives as long as something is bound or it counts in the foreground
+        bindService(new Intent(this, StepCounterService.class), connection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        saveSteps();   //saves to Firebase
+        if (counter != null) {
+            counter.flushSteps();   //steps still waiting in the buffers are counted and saved
+        }
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        saveSteps();   //saves to Firebase
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        saveSteps();   //saves to Firebase
-    }
-
-    @Override
-    public void onBackPressed() {
-        super.onBackPressed();    //moved to background
-        moveTaskToBack(true);
+        if (counter != null && counter.getFirebaseHelper() != null) {
+            counter.getFirebaseHelper().flush();   //queued values are stored before the app may be killed
+        }
+        unsubscribe();
+        unbindService(connection);
     }
 }
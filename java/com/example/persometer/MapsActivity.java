@@ -9,14 +9,22 @@ import android.Manifest;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.location.Location;
+import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
+import com.example.persometer.route.TrackBuffer;
+import com.example.persometer.route.TrackSimplifier;
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
@@ -24,9 +32,14 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MapStyleOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MapsActivity extends AppCompatActivity implements OnMapReadyCallback{
 
     private static final String TAG = "MapsActivity";
@@ -38,15 +51,39 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1234;
     private static final String API_KEY = BuildConfig.ApiKey;
 
+    //route recording
+    private static final long LOCATION_INTERVAL_MS = 2000;     //a fix every 2s while walking
+    private static final float MAX_ACCURACY_M = 25f;           //less accurate fixes are not recorded
+    private static final float MIN_DISTANCE_M = 3f;            //fixes closer to the last one are GPS jitter
+    private static final double ROUTE_TOLERANCE_M = 5;         //the drawn route may be this far off the fixes
+    private static final int MAX_ROUTE_POINTS = 1500;          //the drawn route never has more points
+    private static final long REDRAW_INTERVAL_MS = 2000;       //the route is drawn again at most every 2s
+
     private boolean mLocationPermissionGranted = false;   //location permission flag (false by default)
     private GoogleMap mMap;
     private LatLng current;    //current position of the device
 
+    //every recorded fix; static so the route outlives the activity and goes on when the map is opened again
+    private static final TrackBuffer track = new TrackBuffer();
+    private TrackSimplifier route;   //what is drawn, rebuilt from the track in onCreate
+    private Location lastRecorded;
+    private FusedLocationProviderClient locationClient;
+    private LocationCallback locationCallback;   //null while the route is not recorded
+    private Polyline routeLine;   //null until the map is ready and the location permission granted
+    private boolean started = false;   //between onStart and onStop, the only time locations are requested
+    private long lastRedrawMs;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_maps);
 
+        route = new TrackSimplifier(ROUTE_TOLERANCE_M, MAX_ROUTE_POINTS);
+        TrackBuffer.Reader fixes = track.reader();
+        while (fixes.next()) {
+            route.add(fixes.latE5(), fixes.lngE5());
+        }
+
         getLocationPermission();   //sets and gets the location permission flag
 
         Button BtnGoHome = (Button) findViewById(R.id.btn_goHome);
@@ -100,6 +137,87 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(latLng, zoom));
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        startRecording();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        stopRecording();   //no GPS while the map is not visible, the route goes on once it is again
+    }
+
+    //records the route while the activity is visible and the map is ready
+    private void startRecording() {
+        if (!started || routeLine == null || locationCallback != null) {
+            return;
+        }
+
+        LocationRequest request = LocationRequest.create()
+                .setInterval(LOCATION_INTERVAL_MS)
+                .setFastestInterval(LOCATION_INTERVAL_MS / 2)
+                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        locationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(LocationResult result) {
+                for (Location location : result.getLocations()) {
+                    record(location);
+                }
+                drawRoute();
+            }
+        };
+        if (locationClient == null) {
+            locationClient = LocationServices.getFusedLocationProviderClient(this);
+        }
+        try {
+            locationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            Log.e(TAG, "startRecording: Security exception: " + e.getMessage());
+            locationCallback = null;
+        }
+    }
+
+    //keeps a fix unless it is inaccurate or too close to the last one
+    private void record(Location location) {
+        if (location.hasAccuracy() && location.getAccuracy() > MAX_ACCURACY_M) {
+            return;
+        }
+        if (lastRecorded != null && location.distanceTo(lastRecorded) < MIN_DISTANCE_M) {
+            return;
+        }
+        lastRecorded = location;
+        track.add(location.getLatitude(), location.getLongitude(), location.getTime());
+        route.add(TrackBuffer.toE5(location.getLatitude()), TrackBuffer.toE5(location.getLongitude()));
+    }
+
+    //draws the simplified route, at most every REDRAW_INTERVAL_MS
+    private void drawRoute() {
+        long nowMs = SystemClock.elapsedRealtime();
+        if (routeLine == null || nowMs - lastRedrawMs < REDRAW_INTERVAL_MS) {
+            return;
+        }
+        lastRedrawMs = nowMs;
+
+        List<LatLng> points = new ArrayList<>(route.size());
+        for (int i = 0; i < route.size(); i++) {
+            points.add(new LatLng(TrackBuffer.toDegrees(route.latE5(i)), TrackBuffer.toDegrees(route.lngE5(i))));
+        }
+        routeLine.setPoints(points);
+    }
+
+    private void stopRecording() {
+        if (locationCallback != null) {
+            locationClient.removeLocationUpdates(locationCallback);
+            locationCallback = null;
+            Log.d(TAG, "Route: " + track.size() + " fixes in " + track.sizeBytes() + " bytes, "
+                    + route.size() + " points drawn");
+        }
+    }
+
     //refreshes content every 200ms for a better
     public void content() {
         refresh(200);
@@ -146,6 +264,12 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             mMap.setMyLocationEnabled(true);
             mMap.getUiSettings().setAllGesturesEnabled(true);
             mMap.getUiSettings().setIndoorLevelPickerEnabled(true);
+
+            if (routeLine == null) {   //the map can be ready more than once
+                routeLine = mMap.addPolyline(new PolylineOptions().color(Color.BLUE).width(10f));
+            }
+            drawRoute();   //the route recorded before the map was opened again
+            startRecording();   //the route is drawn while the map is visible
         }
     }
 
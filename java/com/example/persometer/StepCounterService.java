@@ -0,0 +1,467 @@
+package com.example.persometer;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.hardware.SensorManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.persometer.helpers.DayRollover;
+import com.example.persometer.helpers.FirebaseHelper;
+import com.example.persometer.helpers.SingleFlight;
+import com.example.persometer.helpers.StepTally;
+import com.example.persometer.metrics.DetectionMetrics;
+import com.example.persometer.metrics.StartupTimer;
+import com.example.persometer.sensors.AccelerometerStepSource;
+import com.example.persometer.sensors.HardwareStepSource;
+import com.example.persometer.sensors.StepSource;
+import com.example.persometer.steps.StepEngine;
+import com.example.persometer.steps.StepEngines;
+import com.example.persometer.steps.StepPublisher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+//counts the steps whether the app is visible or not: owns the step source, the persistence and the
+//day rollover, MainActivity binds to it to show the count
+public class StepCounterService extends Service implements DayRollover.Listener {
+    private static final String TAG = "StepCounterService";
+
+    private static final String CHANNEL_ID = "counting";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String TRACES_DIR = "traces";   //debug builds record traces while it exists, see recordTrace
+    private static final String STEP_ENGINE = StepEngines.WINDOW;   //counts the steps on devices without a step counter
+
+    //what MainActivity gets when it binds
+    public class LocalBinder extends Binder {
+        public StepCounterService getService() {
+            return StepCounterService.this;
+        }
+    }
+
+    //told on the main thread when the count changed other than by a new step: saved, read or a new day
+    public interface Listener {
+        void stepsChanged();
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //the steps are detected on sensorThread, stored on the main thread
+    private SensorManager sensorManager;
+    private StepSource stepSource;   //the sensor hub's step counter if there is one, a step engine otherwise
+    private HandlerThread sensorThread;
+    private Handler sensorHandler;
+    private final StepPublisher stepPublisher = new StepPublisher();
+    private StepPublisher.Subscription storageSubscription;
+    private final DetectionMetrics detectionMetrics = new DetectionMetrics();   //filled by the step engine
+
+    private DayRollover dayRollover;   //saves and resets the steps at local midnight
+    private FirebaseHelper FBHelper; //FirebaseHelper object used for Android app-Firebase communication, null until it is opened
+    private final List<Runnable> storageWaiters = new ArrayList<>();   //run on the main thread once FBHelper is opened
+    private StepTally tally;   //today's steps and when they are saved, null until FBHelper is opened
+    private boolean counting = false;   //set once the user started the persometer
+    private boolean destroyed = false;   //the FirebaseHelper may still be opening when the service is destroyed
+    private Listener listener;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        //the FirebaseHelper opens its files and Firebase off the main thread, so the activity draws right away;
+        //it knows the locally stored values before Firebase answers
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final FirebaseHelper helper = new FirebaseHelper(new File(getFilesDir(), "persometer.store"));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        storageOpened(helper);
+                    }
+                });
+            }
+        }, "StorageStartup").start();
+
+        //the day boundary is computed once, then every check is a single comparison
+        dayRollover = new DayRollover(this, System.currentTimeMillis(), SystemClock.elapsedRealtimeNanos());
+        scheduleDayCheck();
+
+        //the boundary is computed again when the user changes the clock or the time zone
+        IntentFilter timeFilter = new IntentFilter();
+        timeFilter.addAction(Intent.ACTION_TIME_CHANGED);
+        timeFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        registerReceiver(timeChangedReceiver, timeFilter);
+
+        //sensor samples are delivered to a background thread, so step detection never blocks the main thread
+        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        sensorThread = new HandlerThread("StepDetection");
+        sensorThread.start();
+        sensorHandler = new Handler(sensorThread.getLooper());
+
+        //the steps of a sensor batch reach the main thread together and are stored in one pass
+        storageSubscription = stepPublisher.subscribeBatches(new StepPublisher.BatchSubscriber() {
+            @Override
+            public void onSteps(long[] timestampsNs, int count) {
+                addSteps(timestampsNs, count);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
+
+        //starts with the best step source the device has
+        stepSource = createStepSource();
+        stepSource.start(sensorHandler);
+        StartupTimer.COLD_START.mark("service created");
+    }
+
+    //called on the main thread once the FirebaseHelper is opened, the work that waited for it runs now
+    private void storageOpened(FirebaseHelper helper) {
+        FBHelper = helper;
+        tally = new StepTally(FBHelper);
+        if (destroyed) {
+            //the service is gone: the steps that waited are saved and the helper is closed, nothing is shown
+            for (Runnable waiter : storageWaiters) {
+                waiter.run();
+            }
+            storageWaiters.clear();
+            tally.close();
+            return;
+        }
+        StartupTimer.COLD_START.mark("storage opened");
+        Log.d(TAG, "Storage startup:\n" + FBHelper.getStartupTimes());
+
+        for (Runnable waiter : storageWaiters) {
+            waiter.run();
+        }
+        storageWaiters.clear();
+        stepsChanged();
+    }
+
+    //runs now if the FirebaseHelper is open, else once it is
+    private void withStorage(Runnable work) {
+        if (FBHelper != null) {
+            work.run();
+        } else {
+            storageWaiters.add(work);
+        }
+    }
+
+    //started by startCounting, counting goes on in the foreground until the service is destroyed
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        counting = true;
+        if (canCountInForeground(this)) {
+            startForeground(NOTIFICATION_ID, buildNotification());
+        } else {
+            Log.w(TAG, "onStartCommand: no activity recognition permission, counting stops once the app is closed");
+        }
+        return START_STICKY;   //restarted after the system had to kill it
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        //saves to Firebase and stops the Firebase subscriptions; a helper still opening is closed by storageOpened
+        if (tally != null) {
+            tally.close();
+            Log.d(TAG, "Detection: " + detectionMetrics.snapshot());
+            Log.d(TAG, "Persistence:\n" + FBHelper.getPersistenceMetrics());
+        }
+
+        //the sensor thread finishes the samples it already has, then stops
+        stepSource.stop();
+        storageSubscription.cancel();
+        mainHandler.removeCallbacks(dayCheck);
+        unregisterReceiver(timeChangedReceiver);
+        sensorThread.quitSafely();
+    }
+
+    //the sensor hub counts the steps if the device has a step counter or step detector and the
+    //user allowed it, a step engine on the raw accelerometer samples is the fallback
+    private StepSource createStepSource() {
+        boolean recordTrace = recordTrace();
+        if (!recordTrace && HardwareStepSource.isAvailable(sensorManager) && hasActivityRecognition(this)) {
+            return new HardwareStepSource(sensorManager, stepPublisher);
+        }
+
+        File traceFile = null;
+        if (recordTrace) {
+            traceFile = new File(new File(getFilesDir(), TRACES_DIR), System.currentTimeMillis() + ".trace");
+        }
+        StepEngine engine = StepEngines.create(STEP_ENGINE);
+        engine.setMetrics(detectionMetrics);
+        return new AccelerometerStepSource(sensorManager, engine, stepPublisher, traceFile);
+    }
+
+    //true if the device has a step sensor the user still has to allow, MainActivity asks for it
+    public boolean needsActivityRecognition() {
+        return !recordTrace() && HardwareStepSource.isAvailable(sensorManager) && !hasActivityRecognition(this);
+    }
+
+    //a debug build records the raw accelerometer samples for offline replay while the traces directory exists,
+    //it is switched on with: adb shell run-as com.example.persometer mkdir files/traces
+    private boolean recordTrace() {
+        return BuildConfig.DEBUG && new File(getFilesDir(), TRACES_DIR).isDirectory();
+    }
+
+    //the step sensors need the activity recognition permission since Android 10
+    static boolean hasActivityRecognition(Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACTIVITY_RECOGNITION)
+                        == PackageManager.PERMISSION_GRANTED;
+    }
+
+    //a health foreground service needs the activity recognition permission since Android 14
+    static boolean canCountInForeground(Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.UPSIDE_DOWN_CAKE || hasActivityRecognition(context);
+    }
+
+    //picks the step source again, e.g. after the user allowed the step sensors;
+    //counting moves to the foreground if the permission now allows it
+    public void restartStepSource() {
+        stepSource.stop();
+        stepSource = createStepSource();
+        stepSource.start(sensorHandler);
+        if (counting && canCountInForeground(this)) {
+            startForeground(NOTIFICATION_ID, buildNotification());
+        }
+    }
+
+    //starts counting, in the foreground so it goes on when the activity is gone; without the permission
+    //the foreground service is not allowed, so the service is only started and counts while the app is open
+    public void startCounting() {
+        Intent intent = new Intent(this, StepCounterService.class);
+        if (canCountInForeground(this)) {
+            ContextCompat.startForegroundService(this, intent);
+        } else {
+            startService(intent);
+        }
+        counting = true;
+    }
+
+    public boolean isCounting() {
+        return counting;
+    }
+
+    //publishes every detected step, subscribers are e.g. the display of MainActivity
+    public StepPublisher getStepPublisher() {
+        return stepPublisher;
+    }
+
+    //samples, intervals, processing time and steps of the step engine, for logs or a debug screen
+    public DetectionMetrics.Snapshot getDetectionMetrics() {
+        return detectionMetrics.snapshot();
+    }
+
+    //null until the stored values are opened, Listener.stepsChanged is called then
+    public FirebaseHelper getFirebaseHelper() {
+        return FBHelper;
+    }
+
+    //steps made today
+    public int getSteps() {
+        return tally == null ? 0 : tally.getSteps();
+    }
+
+    //steps saved into Firebase
+    public int getSaved() {
+        return tally == null ? 0 : tally.getSaved();
+    }
+
+    //null to stop the calls, e.g. when the activity unbinds
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    //counts the steps still waiting in the sensor hub and the buffers, then saves them
+    public void flushSteps() {
+        stepSource.flush(new Runnable() {
+            @Override
+            public void run() {
+                //on the sensor thread, every buffered step is published now
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        storageSubscription.deliverNow();   //the steps whose delivery is not yet queued
+                        saveSteps();
+                    }
+                });
+            }
+        });
+    }
+
+    //the latest steps from Firebase are taken over if they are greater: the known ones right away,
+    //those of a fresh read once it answers, then the display is updated
+    public void refreshSteps() {
+        if (FBHelper == null) {
+            return;
+        }
+        tally.refresh();
+        FBHelper.readSteps(new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onResult(Integer value) {
+                if (value != null && tally.refresh(value)) {
+                    stepsChanged();
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.e(TAG, "refreshSteps: saved steps could not be read: " + message);
+            }
+        });
+    }
+
+    //adds the steps of one delivery, called on the main thread
+    private void addSteps(long[] timestampsNs, final int count) {
+        //steps are not counted unless the persometer was started
+        if (!counting) {
+            return;
+        }
+        //the steps made before the stored count is known are added to it once it is
+        if (FBHelper == null) {
+            final long[] waiting = Arrays.copyOf(timestampsNs, count);
+            withStorage(new Runnable() {
+                @Override
+                public void run() {
+                    addSteps(waiting, count);
+                }
+            });
+            return;
+        }
+
+        boolean savedAny = false;
+        for (int i = 0; i < count; i++) {
+            dayRollover.check(timestampsNs[i]);   //steps made after midnight belong to the new day
+            //steps are stored into Firebase every time the count passes a multiple of 100
+            savedAny |= tally.addSteps(dayRollover.minuteOfDay(timestampsNs[i]), 1);
+        }
+
+        if (savedAny) {
+            stepsChanged();
+        }
+    }
+
+    //the day's steps are stored into Firebase and counting starts again for the new day
+    @Override
+    public void newDay() {
+        if (FBHelper == null) {
+            withStorage(new Runnable() {
+                @Override
+                public void run() {
+                    newDay();
+                }
+            });
+            return;
+        }
+
+        //the finished day is stored right away, without waiting for a read that could end after the reset
+        tally.newDay();
+        Log.d(TAG, "After storing the steps at midnight");
+        stepsChanged();
+    }
+
+    //checks the day at midnight even if no step is made around it
+    private void scheduleDayCheck() {
+        mainHandler.removeCallbacks(dayCheck);
+        mainHandler.postDelayed(dayCheck, dayRollover.millisUntilBoundary(SystemClock.elapsedRealtimeNanos()));
+    }
+
+    private final Runnable dayCheck = new Runnable() {
+        @Override
+        public void run() {
+            dayRollover.check(SystemClock.elapsedRealtimeNanos());
+            scheduleDayCheck();
+        }
+    };
+
+    private final BroadcastReceiver timeChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            dayRollover.reschedule(System.currentTimeMillis(), SystemClock.elapsedRealtimeNanos());
+            scheduleDayCheck();
+        }
+    };
+
+    //steps are being saved
+    public void saveSteps() {
+        if (FBHelper == null) {
+            withStorage(new Runnable() {
+                @Override
+                public void run() {
+                    saveSteps();
+                }
+            });
+            return;
+        }
+
+        tally.save();   //stored right away from the locally known saved steps
+        stepsChanged();
+    }
+
+    //updates the notification and the activity, if one is bound
+    private void stepsChanged() {
+        if (destroyed) {
+            return;   //the notification is gone with the service
+        }
+        if (counting) {
+            NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, buildNotification());
+        }
+        if (listener != null) {
+            listener.stepsChanged();
+        }
+    }
+
+    //the ongoing notification of the foreground service, it shows the saved steps and opens MainActivity
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.notification_channel), NotificationManager.IMPORTANCE_LOW);
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent openApp = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), flags);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.moving)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.notification_steps, getSteps()))
+                .setContentIntent(openApp)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.persometer.helpers;
+
+//time source of the helpers, replaced by a simulated clock in the offline tools
+public interface Clock {
+    long nowMs();  //milliseconds on a clock that never goes back
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nowMs() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+}
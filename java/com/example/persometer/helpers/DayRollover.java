@@ -0,0 +1,88 @@
+package com.example.persometer.helpers;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+//tells when the local day ends, measured on the monotonic clock the step timestamps use
+//(SystemClock.elapsedRealtimeNanos), so checking a step costs one long comparison
+public class DayRollover {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    public interface Listener {
+        void newDay();  //called once the local midnight has been reached
+    }
+
+    private final Listener listener;
+    private long dayStartMillis;   //wall clock start of the day being counted
+    private long dayStartNs;       //monotonic time of the last local midnight
+    private long boundaryNs;       //monotonic time of the next local midnight
+    private TimeZone zone;         //the device's time zone, read again by reschedule
+
+    public DayRollover(Listener listener, long nowWallMillis, long nowMonotonicNs) {
+        this.listener = listener;
+        zone = TimeZone.getDefault();
+        dayStartMillis = startOfDay(nowWallMillis, 0);
+        dayStartNs = toMonotonic(dayStartMillis, nowWallMillis, nowMonotonicNs);
+        boundaryNs = toMonotonic(startOfDay(nowWallMillis, 1), nowWallMillis, nowMonotonicNs);
+    }
+
+    //returns true and calls the listener if the local day ended before timeNs
+    public boolean check(long timeNs) {
+        if (timeNs < boundaryNs) {
+            return false;
+        }
+        //the boundary moves by the length of the new day before the listener runs,
+        //so the listener is called once per midnight
+        long nextDayStart = startOfDay(dayStartMillis, 1);
+        dayStartNs = boundaryNs;
+        boundaryNs += (startOfDay(nextDayStart, 1) - nextDayStart) * 1000000;
+        dayStartMillis = nextDayStart;
+        listener.newDay();
+        return true;
+    }
+
+    //recomputes the boundary from the clocks, needed after the time or the time zone changed;
+    //calls the listener if the local day is no longer the one being counted
+    public void reschedule(long nowWallMillis, long nowMonotonicNs) {
+        zone = TimeZone.getDefault();
+        long today = startOfDay(nowWallMillis, 0);
+        dayStartNs = toMonotonic(today, nowWallMillis, nowMonotonicNs);
+        boundaryNs = toMonotonic(startOfDay(nowWallMillis, 1), nowWallMillis, nowMonotonicNs);
+        if (today != dayStartMillis) {
+            dayStartMillis = today;
+            listener.newDay();
+        }
+    }
+
+    //milliseconds left until the boundary, used to wake up at midnight when no step arrives
+    public long millisUntilBoundary(long nowMonotonicNs) {
+        return Math.max(0, (boundaryNs - nowMonotonicNs) / 1000000);
+    }
+
+    //the minute of the local clock (0 = 00:00, 1439 = 23:59) at a time on the monotonic clock;
+    //on the day DST starts or ends the clock jumps, so the change of the zone's offset since midnight is added:
+    //an hour of minutes is skipped on a 23 hour day and counted twice on a 25 hour day
+    public int minuteOfDay(long timeNs) {
+        long elapsedMillis = (timeNs - dayStartNs) / 1000000;
+        long wallMillis = dayStartMillis + elapsedMillis;
+        long localMillis = elapsedMillis + zone.getOffset(wallMillis) - zone.getOffset(dayStartMillis);
+        return (int) Math.max(0, Math.min(MINUTES_PER_DAY - 1, localMillis / 60000));
+    }
+
+    private static long toMonotonic(long wallMillis, long nowWallMillis, long nowMonotonicNs) {
+        return nowMonotonicNs + (wallMillis - nowWallMillis) * 1000000;
+    }
+
+    //local midnight that starts the day wallMillis falls in, moved by the given number of days;
+    //Calendar applies the time zone's DST rules, so days of 23 or 25 hours come out right
+    private static long startOfDay(long wallMillis, int days) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
+        calendar.setTimeInMillis(wallMillis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return calendar.getTimeInMillis();
+    }
+}
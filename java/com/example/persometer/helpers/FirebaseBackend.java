@@ -0,0 +1,68 @@
+package com.example.persometer.helpers;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//StorageBackend of the app, the Firebase Realtime Database
+public class FirebaseBackend implements StorageBackend {
+    private final FirebaseDatabase database;
+    private final String url;   //database root, ending with a '/'
+    private final Map<SingleFlight.Callback<Integer>, ValueEventListener> subscriptions = new HashMap<>();
+
+    public FirebaseBackend(FirebaseDatabase database, String url) {
+        this.database = database;
+        this.url = url;
+    }
+
+    @Override
+    public void read(String path, SingleFlight.Callback<Integer> callback) {
+        database.getReferenceFromUrl(url + path).addListenerForSingleValueEvent(listener(callback));
+    }
+
+    @Override
+    public synchronized void subscribe(String path, SingleFlight.Callback<Integer> callback) {
+        ValueEventListener listener = listener(callback);
+        subscriptions.put(callback, listener);
+        database.getReferenceFromUrl(url + path).addValueEventListener(listener);
+    }
+
+    @Override
+    public synchronized void unsubscribe(String path, SingleFlight.Callback<Integer> callback) {
+        ValueEventListener listener = subscriptions.remove(callback);
+        if (listener != null) {
+            database.getReferenceFromUrl(url + path).removeEventListener(listener);
+        }
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, final WriteCallback callback) {
+        database.getReferenceFromUrl(url).updateChildren(updates, new DatabaseReference.CompletionListener() {
+            @Override
+            public void onComplete(DatabaseError databaseError, @NonNull DatabaseReference databaseReference) {
+                callback.onComplete(databaseError == null ? null : databaseError.getMessage());
+            }
+        });
+    }
+
+    private static ValueEventListener listener(final SingleFlight.Callback<Integer> callback) {
+        return new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                callback.onResult(dataSnapshot.getValue(Integer.class));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                callback.onError(databaseError.getMessage());
+            }
+        };
+    }
+}
@@ -2,170 +2,515 @@ package com.example.persometer.helpers;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
+import com.example.persometer.metrics.PersistenceMetrics;
+import com.example.persometer.metrics.StartupTimer;
+import com.example.persometer.models.IntradaySteps;
 import com.example.persometer.models.User;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
-//creates a connection between Firebase and the Android app
+//creates a connection between Firebase (or any other StorageBackend) and the Android app
 public class FirebaseHelper{
     private static final String TAG = "FirebaseHelper"; //for logging
-
-    private DatabaseReference myRef, myWeightRef, myHeightRef;  //refrences to Firebase
-    private FirebaseDatabase database;  //Firebase variable
+    private static final String DATABASE_URL = "https://persometer.firebaseio.com/";
+    private static final String WEIGHT_PATH = "0Weight";
+    private static final String HEIGHT_PATH = "0Height";
+    private static final String STEPS_CHILD = "/steps";
+    private static final String MINUTES_CHILD = "/minutes";
+    private static final int SAVE_STEP_DELTA = 500;            //steps are written at least every 500 steps
+    private static final long SAVE_MAX_DELAY_MS = 5 * 60 * 1000;  //and at the latest 5 minutes after they changed
+    private static final long READ_TTL_MS = 30 * 1000;  //values read or written in the last 30s are not read again
+    private static final int ROLLUP_CACHE_SIZE = 128;  //totals of days, weeks, months and years kept in memory
+
+    private StorageBackend backend;  //the database the values are stored into
+    private final PersistenceMetrics metrics = new PersistenceMetrics();  //every operation of backend
+    private final StartupTimer startup;  //the phases of the constructor
+    private String currentFormattedDate;  //date node of the steps made today
+    private String stepsPath;  //path of the steps made today
+    private int currentDay;  //today as yyyyMMdd, the day key of the local store
+    private LocalStore localStore;  //on-device copy of every value, read first and synced to Firebase
+    private File intradayDir;  //one file per day with the steps made in every minute
+    private IntradaySteps intraday;  //steps made in every minute of the current date
+    private WriteBehindQueue writeQueue;  //collects the writes and stores them together
+    private SingleFlight<Integer> reads;  //asynchronous reads, shared by concurrent callers and cached
+    private RollupCache rollups;  //step totals per day, week, month and year for the history views
 
     private int weight, height, steps; //variables storing Firebase data
     private User user;  //instance to a User variable
 
     private SimpleDateFormat df = new SimpleDateFormat("dd-MMM-yyyy");  //formatting the current date into a dd-MM-yyyy String type
+    private SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");  //formatting the current date into a local store day
 
-    public FirebaseHelper() {
-        database = FirebaseDatabase.getInstance();  //stores Firebase instance into database variable
-
-        //gets current date which is later formatted into dd-MM-yyyy type
-        Date currentDate = Calendar.getInstance().getTime();
-        String currentFormattedDate = df.format(currentDate);
-
-        //stores a Firebase reference of the steps made during the current date, the weight and the height of the user
-        myRef = database.getReferenceFromUrl("https://persometer.firebaseio.com/" + currentFormattedDate);
-        myHeightRef = database.getReferenceFromUrl("https://persometer.firebaseio.com/0Height");
-        myWeightRef = database.getReferenceFromUrl("https://persometer.firebaseio.com/0Weight");
-
-        //creates a new user and reads the steps made dring the current date, the weight and the height of the user
-        user = new User();
-        readSteps();
-        readHeight();
-        readWeight();
+    //opens files and connects to Firebase, so it is best created off the main thread
+    public FirebaseHelper(File localStoreFile) {
+        this(localStoreFile, new FirebaseBackend(FirebaseDatabase.getInstance(), DATABASE_URL), Clock.SYSTEM);
     }
 
-    private void readSteps() {
-        //listener to the "steps" child
-        myRef.child("steps").addListenerForSingleValueEvent(new ValueEventListener() {
+    //localStoreFile may be null to keep every value in Firebase only
+    public FirebaseHelper(File localStoreFile, StorageBackend backend, Clock clock) {
+        startup = new StartupTimer();
+        this.backend = new MeteredBackend(backend, metrics);
+
+        //the local store is opened first, so the saved values are known before Firebase answers
+        if (localStoreFile != null) {
+            try {
+                localStore = new LocalStore(localStoreFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Local store could not be opened: " + e.getMessage());
+            }
+            intradayDir = new File(localStoreFile.getParentFile(), "intraday");
+            intradayDir.mkdirs();
+        }
+        startup.mark("local store opened");
+
+        //stores the path of the steps made during the current date
+        dayPath();
+        intraday = loadIntraday();
+        startup.mark("intraday loaded");
+
+        //pending values are stored with a single multi-path update
+        writeQueue = new WriteBehindQueue(new WriteBehindQueue.Sink() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                String key = myRef.getKey();  //gets the reference key
+            public void write(final Map<String, Object> updates) {
+                Log.d(TAG, "Writing " + updates.size() + " values");
+                FirebaseHelper.this.backend.write(updates, new StorageBackend.WriteCallback() {
+                    @Override
+                    public void onComplete(String error) {
+                        if (error == null) {
+                            markSynced(updates);
+                            rollups.written(updates);
+                        } else {
+                            Log.e(TAG, "Write failed: " + error);
+                        }
+                    }
+                });
+            }
+        }, SAVE_STEP_DELTA, SAVE_MAX_DELAY_MS, clock);
 
-                Log.d(TAG,"Currently reading steps that were previously saved");
+        //a read goes to Firebase once, every caller asking for the same path meanwhile gets the same result
+        reads = new SingleFlight<>(new SingleFlight.Loader<Integer>() {
+            @Override
+            public void load(String path, SingleFlight.Callback<Integer> done) {
+                FirebaseHelper.this.backend.read(path, done);
+            }
+        }, READ_TTL_MS, clock);
 
-                if (dataSnapshot.getValue() != null) {
-                    int stepsRead = dataSnapshot.getValue(Integer.class); //gets steps from Firebase
-                    user.setSavedSteps(stepsRead);  //stores the value into the user object
-                    Log.d(TAG,"Saved steps dataSnapshot = " + stepsRead);
-                }
+        //every change of a day's steps is added to the totals of its week, month and year,
+        //the local store remembers which steps are in them once they are stored
+        rollups = new RollupCache(new SingleFlight.Loader<Integer>() {
+            @Override
+            public void load(String path, SingleFlight.Callback<Integer> done) {
+                FirebaseHelper.this.backend.read(path, done);
             }
+        }, writeQueue, ROLLUP_CACHE_SIZE, new RollupCache.Listener() {
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {}
+            public void stored(int day, int numSteps) {
+                storeRolledUp(day, numSteps);
+            }
         });
 
-        steps = user.getSavedSteps();  //gets the steps stored into the user object and adds them into the class attribute
-        Log.d(TAG,"Saved steps = " + steps);
-
+        //creates a new user with the locally stored values, then reads the steps made dring the current date,
+        //the weight and the height of the user from Firebase
+        user = new User();
+        if (localStore != null) {
+            if (localStore.getWeight() > 0) {
+                user.setBodyWeight(localStore.getWeight());
+            }
+            if (localStore.getHeight() > 0) {
+                user.setHeight(localStore.getHeight());
+            }
+            user.setSavedSteps(localStore.getSteps(currentDay));
+            syncLocalChanges();
+        }
+        startup.mark("local changes queued");
+        steps = user.getSavedSteps();
+        weight = user.getBodyWeight();
+        height = user.getHeight();
+
+        //one long-lived subscription per path keeps the cached values up to date
+        this.backend.subscribe(stepsPath, stepsListener);
+        this.backend.subscribe(HEIGHT_PATH, heightListener);
+        this.backend.subscribe(WEIGHT_PATH, weightListener);
+        startup.mark("subscribed");
     }
 
-    private void readWeight() {
-        //listener to the weight reference
-        myWeightRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                String key = myWeightRef.getKey();  //gets the reference key
+    //path of the steps made during the current date
+    private void dayPath() {
+        //gets current date which is later formatted into dd-MM-yyyy type
+        Date currentDate = Calendar.getInstance().getTime();
+        currentFormattedDate = df.format(currentDate);
+        currentDay = Integer.parseInt(dayFormat.format(currentDate));
+        stepsPath = currentFormattedDate + STEPS_CHILD;
+    }
 
-                Log.d(TAG,"Currently reading weight");
+    //moves the steps subscription to the new date, called at local midnight
+    public void newDay() {
+        backend.unsubscribe(stepsPath, stepsListener);
+        dayPath();
+        intraday = loadIntraday();
+        steps = 0;
+        user.setSavedSteps(0);
+        backend.subscribe(stepsPath, stepsListener);
+    }
 
-                if(dataSnapshot.getValue() != null) {
-                    int weightRead = dataSnapshot.getValue(Integer.class);  //gets weight from Firebase
-                    user.setBodyWeight(weightRead);  //stores weight into the user object
-                    Log.d(TAG,"Weight dataSnapshot = " + weightRead);
-                }
-            }
+    //queues the values that were stored locally but never reached Firebase, e.g. while offline,
+    //and adds the steps that never reached the totals to them again
+    private void syncLocalChanges() {
+        final List<int[]> unrolled = new ArrayList<>();
+        localStore.visitUnrolled(new LocalStore.RollupVisitor() {
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {}
+            public void steps(int day, int rolledUp, int numSteps) {
+                unrolled.add(new int[]{day, rolledUp, numSteps});
+            }
         });
+        for (int[] day : unrolled) {
+            rollups.dayChanged(day[0], day[1], day[2]);
+        }
+        localStore.visitUnsynced(new LocalStore.Visitor() {
+            @Override
+            public void steps(int day, int numSteps) {
+                try {
+                    writeQueue.put(df.format(dayFormat.parse(Integer.toString(day))) + STEPS_CHILD, numSteps);
+                } catch (ParseException e) {
+                    Log.e(TAG, "Unknown day in local store: " + day);
+                }
+            }
 
-        weight = user.getBodyWeight();  //gets the weight stored into the user object and adds them into the class attribute
-        Log.d(TAG,"Weight = " + weight);
+            @Override
+            public void weight(int newWeight) {
+                writeQueue.put(WEIGHT_PATH, newWeight);
+            }
 
+            @Override
+            public void height(int newHeight) {
+                writeQueue.put(HEIGHT_PATH, newHeight);
+            }
+        });
+        writeQueue.flush();
     }
 
-    private void readHeight() {
-        //listener to the height reference
-        myHeightRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                String key = myHeightRef.getKey();  //gets the reference key
+    //remembers in the local store which values Firebase holds now
+    private void markSynced(Map<String, Object> updates) {
+        if (localStore == null) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                String path = update.getKey();
+                if (!(update.getValue() instanceof Integer) || path.startsWith(RollupCache.ROLLUPS_PATH)) {
+                    continue;   //the intraday steps and the totals are not part of the local store
+                }
+                int value = (Integer) update.getValue();
+                if (path.equals(WEIGHT_PATH)) {
+                    localStore.weightSynced(value);
+                } else if (path.equals(HEIGHT_PATH)) {
+                    localStore.heightSynced(value);
+                } else {
+                    String date = path.substring(0, path.length() - STEPS_CHILD.length());
+                    localStore.stepsSynced(Integer.parseInt(dayFormat.format(df.parse(date))), value);
+                }
+            }
+        } catch (IOException | ParseException e) {
+            Log.e(TAG, "Local store could not be updated: " + e.getMessage());
+        }
+    }
 
-                Log.d(TAG,"Currently reading height");
+    //stays subscribed to the steps of the current date, every change updates the cached value
+    private final SingleFlight.Callback<Integer> stepsListener = new SingleFlight.Callback<Integer>() {
+        @Override
+        public void onResult(Integer stepsRead) {
+            Log.d(TAG,"Currently reading steps that were previously saved");
 
-                if(dataSnapshot.getValue() != null) {
-                    int heightRead = dataSnapshot.getValue(Integer.class);  //gets height from Firebase
+            if (stepsRead != null) {
+                //steps only grow during a day, the greatest of the local and the Firebase value wins
+                if (stepsRead > user.getSavedSteps()) {
+                    user.setSavedSteps(stepsRead);  //stores the value into the user object
+                    storeLocally(STEPS_CHILD, stepsRead, true);
+                    storeRolledUp(currentDay, stepsRead);  //the device that made them added them to the totals
+                }
+                steps = user.getSavedSteps();  //the class attribute follows the user object
+                reads.put(stepsPath, stepsRead);
+                Log.d(TAG,"Saved steps dataSnapshot = " + stepsRead);
+            }
+        }
+        @Override
+        public void onError(String message) {
+            Log.e(TAG, "Subscription to the steps failed: " + message);
+        }
+    };
+
+    //stays subscribed to the weight, every change updates the cached value
+    private final SingleFlight.Callback<Integer> weightListener = new SingleFlight.Callback<Integer>() {
+        @Override
+        public void onResult(Integer weightRead) {
+            Log.d(TAG,"Currently reading weight");
+
+            if(weightRead != null) {
+                //a weight set on this device wins over the one in Firebase until it is stored there,
+                //every other change in Firebase is taken over
+                if (localStore == null || !localStore.isWeightUnsynced()) {
+                    user.setBodyWeight(weightRead);  //stores weight into the user object
+                    storeLocally(WEIGHT_PATH, weightRead, true);
+                }
+                weight = user.getBodyWeight();  //the class attribute follows the user object
+                reads.put(WEIGHT_PATH, weightRead);
+                Log.d(TAG,"Weight dataSnapshot = " + weightRead);
+            }
+        }
+        @Override
+        public void onError(String message) {
+            Log.e(TAG, "Subscription to the weight failed: " + message);
+        }
+    };
+
+    //stays subscribed to the height, every change updates the cached value
+    private final SingleFlight.Callback<Integer> heightListener = new SingleFlight.Callback<Integer>() {
+        @Override
+        public void onResult(Integer heightRead) {
+            Log.d(TAG,"Currently reading height");
+
+            if(heightRead != null) {
+                //a height set on this device wins over the one in Firebase until it is stored there,
+                //every other change in Firebase is taken over
+                if (localStore == null || !localStore.isHeightUnsynced()) {
                     user.setHeight(heightRead);  //stores height into the user object
-                    Log.d(TAG,"Height dataSnapshot = " + heightRead);
+                    storeLocally(HEIGHT_PATH, heightRead, true);
                 }
+                height = user.getHeight();  //the class attribute follows the user object
+                reads.put(HEIGHT_PATH, heightRead);
+                Log.d(TAG,"Height dataSnapshot = " + heightRead);
             }
-            @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {}
-        });
-
-        height = user.getHeight();  //gets the height stored into the user object and adds them into the class attribute
-        Log.d(TAG,"Height = " + height);
+        }
+        @Override
+        public void onError(String message) {
+            Log.e(TAG, "Subscription to the height failed: " + message);
+        }
+    };
+
+    //stops the subscriptions, called when the helper is no longer used
+    public void close() {
+        backend.unsubscribe(stepsPath, stepsListener);
+        backend.unsubscribe(WEIGHT_PATH, weightListener);
+        backend.unsubscribe(HEIGHT_PATH, heightListener);
     }
 
-    //returns the calories calculated by the user object
-    //based on the steps made, user's weight and height
+    //returns the calories kept by the user object, up to date with the saved steps,
+    //user's weight and height
     public double getCalories() { return user.getCalories(); }
 
-    //returns the distance in km calculated by the user object
-    //based on the steps made
+    //returns the distance in km kept by the user object, up to date with the saved steps
     public double getKm() {
         return user.getKm();
     }
 
     public void inputSteps(int numSteps) {
-        String key = myRef.push().getKey(); //gets the reference key
+        rollups.dayChanged(currentDay, steps, numSteps);  //the totals grow by the steps added since the last save
         steps = numSteps;  //updates the steps attribute
-        myRef.child("steps").setValue(steps);  //stores the steps into Firebase
+        storeLocally(STEPS_CHILD, steps, false);  //the local store is written first
+        saveIntraday();  //the steps of every minute are stored with the total
+        writeQueue.putSteps(stepsPath, steps);  //queues the steps to be stored into Firebase
+        reads.put(stepsPath, steps);  //the newest value is the one just written
         user.setSavedSteps(steps);  //updates the savedSteps attribute from user object
     }
 
+    //returns the calories burnt while walking the given steps, e.g. a total read with readRollup
+    public double getCaloriesFor(int numSteps) {
+        return user.getCaloriesFor(numSteps);
+    }
+
+    //returns the distance in km walked with the given steps
+    public double getKmFor(int numSteps) {
+        return user.getKmFor(numSteps);
+    }
+
+    //fills calories[i] and km[i] with the metrics of dailySteps[offset + i], e.g. a year of days for a history view
+    public void getMetricsFor(int[] dailySteps, int offset, int count, double[] calories, double[] km) {
+        user.getMetrics().fillDays(dailySteps, offset, count, calories, km);
+    }
+
     public void inputWeight(int newWeight) {
-        String key = myWeightRef.push().getKey(); //gets the reference key
         weight = newWeight; //updates the weight attribute
-        myWeightRef.setValue(newWeight); //stores the weight into Firebase
+        storeLocally(WEIGHT_PATH, newWeight, false);  //the local store is written first
+        writeQueue.put(WEIGHT_PATH, newWeight); //queues the weight to be stored into Firebase
+        reads.put(WEIGHT_PATH, newWeight);
         user.setBodyWeight(weight);  //updates the bodyWeight attribute from user object
     }
 
     public void inputHeight(int newHeight) {
-        String key = myHeightRef.push().getKey();  //gets the reference key
         height = newHeight;  //updates the height attribute
-        myHeightRef.setValue(newHeight);  //stores the height into Firebase
+        storeLocally(HEIGHT_PATH, newHeight, false);  //the local store is written first
+        writeQueue.put(HEIGHT_PATH, newHeight);  //queues the height to be stored into Firebase
+        reads.put(HEIGHT_PATH, newHeight);
         user.setHeight(height);  //updates the height attribute from user object
     }
 
-    //reads steps from Firebase and passes the value to another object type
+    //stores today's steps (STEPS_CHILD), the weight or the height into the local store,
+    //synced tells that the value came from Firebase
+    private void storeLocally(String path, int value, boolean synced) {
+        if (localStore == null) {
+            return;
+        }
+        try {
+            if (path.equals(WEIGHT_PATH)) {
+                localStore.putWeight(value);
+                if (synced) {
+                    localStore.weightSynced(value);
+                }
+            } else if (path.equals(HEIGHT_PATH)) {
+                localStore.putHeight(value);
+                if (synced) {
+                    localStore.heightSynced(value);
+                }
+            } else {
+                localStore.putSteps(currentDay, value);
+                if (synced) {
+                    localStore.stepsSynced(currentDay, value);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Local store could not be written: " + e.getMessage());
+        }
+    }
+
+    //remembers that the stored totals hold the day's steps up to numSteps, a later value never goes back
+    private void storeRolledUp(int day, int numSteps) {
+        if (localStore == null || numSteps <= localStore.getRolledUp(day)) {
+            return;
+        }
+        try {
+            localStore.stepsRolledUp(day, numSteps);
+        } catch (IOException e) {
+            Log.e(TAG, "Local store could not be written: " + e.getMessage());
+        }
+    }
+
+    //adds steps made during a minute of the current date (0 = 00:00)
+    public void addIntradaySteps(int minute, int numSteps) {
+        intraday.add(minute, numSteps);
+    }
+
+    //steps made in every minute of the current date
+    public IntradaySteps getIntraday() {
+        return intraday;
+    }
+
+    //reads the intraday steps of the current date from its file, empty if there is none
+    private IntradaySteps loadIntraday() {
+        File file = intradayFile();
+        if (file == null || !file.exists()) {
+            return new IntradaySteps();
+        }
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                byte[] encoded = new byte[(int) file.length()];
+                int read = 0;
+                while (read < encoded.length) {
+                    int n = in.read(encoded, read, encoded.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                return IntradaySteps.decode(new String(encoded, 0, read, "US-ASCII"));
+            } finally {
+                in.close();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Intraday steps could not be read: " + e.getMessage());
+            return new IntradaySteps();
+        }
+    }
+
+    //stores the intraday steps of the current date into its file and queues them for Firebase
+    private void saveIntraday() {
+        String encoded = intraday.encode();
+        writeQueue.put(currentFormattedDate + MINUTES_CHILD, encoded);
+
+        File file = intradayFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(encoded.getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Intraday steps could not be written: " + e.getMessage());
+        }
+    }
+
+    private File intradayFile() {
+        return intradayDir == null ? null : new File(intradayDir, Integer.toString(currentDay));
+    }
+
+    //operation counts, latencies, errors and bytes of every read and write so far
+    public PersistenceMetrics.Snapshot getPersistenceMetrics() {
+        return metrics.snapshot();
+    }
+
+    //how long each phase of the constructor took
+    public StartupTimer getStartupTimes() {
+        return startup;
+    }
+
+    //stores every queued value into Firebase now
+    public void flush() {
+        writeQueue.flush();
+    }
+
+    //returns the latest known steps, kept up to date by the Firebase subscription
     public int getSteps() {
-        readSteps();
-        Log.d(TAG, "saved steps = " + steps);
         return steps;
     }
 
-    //reads weight from Firebase and passes the value to another object type
+    //returns the latest known weight, kept up to date by the Firebase subscription
     public int getWeight() {
-        readWeight();
-        Log.d(TAG, "weight = " + weight);
         return weight;
     }
 
-    //reads height from Firebase and passes the value to another object type
+    //returns the latest known height, kept up to date by the Firebase subscription
     public int getHeight() {
-        readHeight();
-        Log.d(TAG, "height = " + height);
         return height;
     }
+
+    //reads today's steps and passes them to the callback once they arrived, null if none were saved
+    public void readSteps(SingleFlight.Callback<Integer> callback) {
+        reads.get(stepsPath, callback);
+    }
+
+    //reads the weight and passes it to the callback once it arrived, null if none was saved
+    public void readWeight(SingleFlight.Callback<Integer> callback) {
+        reads.get(WEIGHT_PATH, callback);
+    }
+
+    //reads the height and passes it to the callback once it arrived, null if none was saved
+    public void readHeight(SingleFlight.Callback<Integer> callback) {
+        reads.get(HEIGHT_PATH, callback);
+    }
+
+    //reads the steps of a day, week, month or year and passes them to the callback, 0 if none were saved;
+    //period is a key like RollupCache.week(20240115), the week starting on Monday the 15th of January 2024
+    public void readRollup(String period, SingleFlight.Callback<Integer> callback) {
+        rollups.get(period, callback);
+    }
+
+    //the day key of today as yyyyMMdd, used with the RollupCache keys
+    public int getCurrentDay() {
+        return currentDay;
+    }
 }
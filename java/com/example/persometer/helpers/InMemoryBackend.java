@@ -0,0 +1,103 @@
+package com.example.persometer.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//in-process stand-in for the database, answers synchronously and counts the traffic it sees;
+//bytes are estimated as the path plus the value as text, like the JSON sent over the wire
+public class InMemoryBackend implements StorageBackend {
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, List<SingleFlight.Callback<Integer>>> subscribers = new HashMap<>();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    @Override
+    public void read(String path, SingleFlight.Callback<Integer> callback) {
+        callback.onResult(readValue(path));
+    }
+
+    @Override
+    public void subscribe(String path, SingleFlight.Callback<Integer> callback) {
+        synchronized (this) {
+            List<SingleFlight.Callback<Integer>> callbacks = subscribers.get(path);
+            if (callbacks == null) {
+                callbacks = new ArrayList<>();
+                subscribers.put(path, callbacks);
+            }
+            callbacks.add(callback);
+        }
+        //a new subscription downloads the current value
+        callback.onResult(readValue(path));
+    }
+
+    @Override
+    public synchronized void unsubscribe(String path, SingleFlight.Callback<Integer> callback) {
+        List<SingleFlight.Callback<Integer>> callbacks = subscribers.get(path);
+        if (callbacks != null) {
+            callbacks.remove(callback);
+        }
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, WriteCallback callback) {
+        List<SingleFlight.Callback<Integer>> notified = new ArrayList<>();
+        List<Integer> notifiedValues = new ArrayList<>();
+        synchronized (this) {
+            writes.incrementAndGet();
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                values.put(update.getKey(), update.getValue());
+                bytesWritten.addAndGet(size(update.getKey(), update.getValue()));
+
+                List<SingleFlight.Callback<Integer>> callbacks = subscribers.get(update.getKey());
+                if (callbacks != null && update.getValue() instanceof Integer) {
+                    Integer value = (Integer) update.getValue();
+                    for (SingleFlight.Callback<Integer> subscriber : callbacks) {
+                        notified.add(subscriber);
+                        notifiedValues.add(value);
+                    }
+                }
+            }
+        }
+        //the writing device raises its own events locally, nothing is downloaded for them
+        for (int i = 0; i < notified.size(); i++) {
+            notified.get(i).onResult(notifiedValues.get(i));
+        }
+        callback.onComplete(null);
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    private Integer readValue(String path) {
+        Object value;
+        synchronized (this) {
+            value = values.get(path);
+        }
+        reads.incrementAndGet();
+        bytesRead.addAndGet(size(path, value));
+        return value instanceof Integer ? (Integer) value : null;
+    }
+
+    private static int size(String path, Object value) {
+        return path.length() + String.valueOf(value).length();
+    }
+}
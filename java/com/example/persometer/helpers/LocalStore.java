@@ -0,0 +1,283 @@
+package com.example.persometer.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//on-device source of truth for the steps and the profile: an append-only file of 16 byte records
+//(type, day, value, checksum); the latest record of a key wins, a record cut off or damaged by a crash
+//is dropped when the file is opened, SYNCED records remember which value of a key is in Firebase
+//and ROLLED_UP records which steps of a day are in the stored day/week/month/year totals
+public class LocalStore {
+    private static final int RECORD_SIZE = 16;
+    private static final int TYPE_STEPS = 1;
+    private static final int TYPE_WEIGHT = 2;
+    private static final int TYPE_HEIGHT = 3;
+    private static final int SYNCED = 0x100;   //added to a type: the value is stored into Firebase
+    private static final int ROLLED_UP = 0x200;   //added to TYPE_STEPS: the steps are in the stored totals
+    private static final int WEIGHT_KEY = -TYPE_WEIGHT;   //keys of the profile values, days are positive
+    private static final int HEIGHT_KEY = -TYPE_HEIGHT;
+    private static final int COMPACT_RECORDS = 4096;   //the file is rewritten once it holds more records
+    private static final int NONE = -1;
+
+    public interface Visitor {
+        void steps(int day, int steps);
+
+        void weight(int weight);
+
+        void height(int height);
+    }
+
+    public interface RollupVisitor {
+        void steps(int day, int rolledUp, int steps);
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    private int records = 0;   //records in the file
+    //key (a yyyyMMdd day, WEIGHT_KEY or HEIGHT_KEY) -> {latest value, value stored into Firebase,
+    //steps in the stored totals}
+    private final Map<Integer, int[]> values = new HashMap<>();
+
+    public LocalStore(File file) throws IOException {
+        this.file = file;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        load();
+        if (records > COMPACT_RECORDS) {
+            compact();
+        }
+    }
+
+    //days are stored as yyyyMMdd, e.g. 20260318; 0 means nothing was stored for the day
+    public synchronized int getSteps(int day) {
+        return valueOf(day, 0);
+    }
+
+    //0 means no weight was stored yet
+    public synchronized int getWeight() {
+        return valueOf(WEIGHT_KEY, 0);
+    }
+
+    //0 means no height was stored yet
+    public synchronized int getHeight() {
+        return valueOf(HEIGHT_KEY, 0);
+    }
+
+    public synchronized void putSteps(int day, int steps) throws IOException {
+        int[] entry = entry(day);
+        if (entry[2] == NONE && entry[0] != steps) {
+            stepsRolledUp(day, entry[0] == NONE ? 0 : entry[0]);   //the changes from here on are counted
+        }
+        put(TYPE_STEPS, day, day, steps);
+    }
+
+    public synchronized void putWeight(int weight) throws IOException {
+        put(TYPE_WEIGHT, WEIGHT_KEY, 0, weight);
+    }
+
+    public synchronized void putHeight(int height) throws IOException {
+        put(TYPE_HEIGHT, HEIGHT_KEY, 0, height);
+    }
+
+    //remembers that Firebase holds this value of the key
+    public synchronized void stepsSynced(int day, int steps) throws IOException {
+        synced(TYPE_STEPS, day, day, steps);
+    }
+
+    public synchronized void weightSynced(int weight) throws IOException {
+        synced(TYPE_WEIGHT, WEIGHT_KEY, 0, weight);
+    }
+
+    public synchronized void heightSynced(int height) throws IOException {
+        synced(TYPE_HEIGHT, HEIGHT_KEY, 0, height);
+    }
+
+    //remembers that the stored totals of the day's week, month and year hold these steps of the day
+    public synchronized void stepsRolledUp(int day, int steps) throws IOException {
+        int[] entry = entry(day);
+        if (entry[2] != steps) {
+            entry[2] = steps;
+            append(TYPE_STEPS | ROLLED_UP, day, steps);
+        }
+    }
+
+    //steps of the day in the stored totals; a day not changed since they are recorded is taken as added
+    public synchronized int getRolledUp(int day) {
+        int[] value = values.get(day);
+        if (value == null) {
+            return 0;
+        }
+        return value[2] != NONE ? value[2] : value[0] != NONE ? value[0] : 0;
+    }
+
+    //true while a weight set on this device has not reached Firebase
+    public synchronized boolean isWeightUnsynced() {
+        return isUnsynced(WEIGHT_KEY);
+    }
+
+    //true while a height set on this device has not reached Firebase
+    public synchronized boolean isHeightUnsynced() {
+        return isUnsynced(HEIGHT_KEY);
+    }
+
+    //visits the latest values Firebase does not hold yet
+    public synchronized void visitUnsynced(Visitor visitor) {
+        for (Map.Entry<Integer, int[]> entry : values.entrySet()) {
+            int[] value = entry.getValue();
+            if (value[0] == value[1]) {
+                continue;
+            }
+            if (entry.getKey() == WEIGHT_KEY) {
+                visitor.weight(value[0]);
+            } else if (entry.getKey() == HEIGHT_KEY) {
+                visitor.height(value[0]);
+            } else {
+                visitor.steps(entry.getKey(), value[0]);
+            }
+        }
+    }
+
+    //visits the days with steps that are not in the stored totals yet
+    public synchronized void visitUnrolled(RollupVisitor visitor) {
+        for (Map.Entry<Integer, int[]> entry : values.entrySet()) {
+            int day = entry.getKey();
+            int steps = entry.getValue()[0];
+            if (day > 0 && steps != NONE && steps != getRolledUp(day)) {
+                visitor.steps(day, getRolledUp(day), steps);
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean isUnsynced(int key) {
+        int[] value = values.get(key);
+        return value != null && value[0] != NONE && value[0] != value[1];
+    }
+
+    //missing also if the key only has SYNCED or ROLLED_UP records
+    private int valueOf(int key, int missing) {
+        int[] value = values.get(key);
+        return value == null || value[0] == NONE ? missing : value[0];
+    }
+
+    private void put(int type, int key, int day, int value) throws IOException {
+        int[] entry = entry(key);
+        if (entry[0] != value) {
+            entry[0] = value;
+            append(type, day, value);
+        }
+    }
+
+    private void synced(int type, int key, int day, int value) throws IOException {
+        int[] entry = entry(key);
+        if (entry[1] != value) {
+            entry[1] = value;
+            append(type | SYNCED, day, value);
+        }
+    }
+
+    private int[] entry(int key) {
+        int[] entry = values.get(key);
+        if (entry == null) {
+            entry = new int[]{NONE, NONE, NONE};
+            values.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - size % RECORD_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int type = buffer.getInt(), day = buffer.getInt(), value = buffer.getInt(), checksum = buffer.getInt();
+            if (checksum != checksum(type, day, value)) {
+                break;   //damaged by a crash while writing, the rest is dropped
+            }
+            int baseType = type & ~(SYNCED | ROLLED_UP);
+            int key = baseType == TYPE_STEPS ? day : -baseType;
+            entry(key)[(type & ROLLED_UP) != 0 ? 2 : (type & SYNCED) != 0 ? 1 : 0] = value;
+            records++;
+        }
+
+        //later appends go right after the last good record
+        channel.truncate((long) records * RECORD_SIZE);
+        channel.position((long) records * RECORD_SIZE);
+    }
+
+    //rewrites the file with the latest, the synced and the rolled up value of every key, then swaps it in
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        channel.close();
+        channel = new RandomAccessFile(temp, "rw").getChannel();
+        channel.truncate(0);
+        records = 0;
+
+        for (Map.Entry<Integer, int[]> entry : values.entrySet()) {
+            int key = entry.getKey();
+            int type = key > 0 ? TYPE_STEPS : -key;
+            int day = key > 0 ? key : 0;
+            int[] value = entry.getValue();
+            if (value[0] != NONE) {
+                append(type, day, value[0]);
+            }
+            if (value[1] != NONE) {
+                append(type | SYNCED, day, value[1]);
+            }
+            if (value[2] != NONE) {
+                append(type | ROLLED_UP, day, value[2]);
+            }
+        }
+        channel.force(true);
+        channel.close();
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position((long) records * RECORD_SIZE);
+    }
+
+    private void append(int type, int day, int value) throws IOException {
+        record.clear();
+        record.putInt(type).putInt(day).putInt(value).putInt(checksum(type, day, value));
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        records++;
+    }
+
+    private int checksum(int type, int day, int value) {
+        crc.reset();
+        update(type);
+        update(day);
+        update(value);
+        return (int) crc.getValue();
+    }
+
+    private void update(int field) {
+        crc.update(field);
+        crc.update(field >>> 8);
+        crc.update(field >>> 16);
+        crc.update(field >>> 24);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.persometer.helpers;
+
+import com.example.persometer.metrics.PersistenceMetrics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//passes every operation on to another StorageBackend and records it into PersistenceMetrics,
+//named after the operation and the kind of path, e.g. "read steps", "write minutes", "update weight";
+//bytes are estimated as the path plus the value as text, like the JSON sent over the wire
+public class MeteredBackend implements StorageBackend {
+    private final StorageBackend backend;
+    private final PersistenceMetrics metrics;
+    private final Map<SingleFlight.Callback<Integer>, SingleFlight.Callback<Integer>> subscriptions = new HashMap<>();
+
+    public MeteredBackend(StorageBackend backend, PersistenceMetrics metrics) {
+        this.backend = backend;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void read(final String path, final SingleFlight.Callback<Integer> callback) {
+        final long start = System.nanoTime();
+        backend.read(path, new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onResult(Integer value) {
+                metrics.record("read " + kind(path), System.nanoTime() - start, size(path, value), null);
+                callback.onResult(value);
+            }
+
+            @Override
+            public void onError(String message) {
+                metrics.record("read " + kind(path), System.nanoTime() - start, path.length(), message);
+                callback.onError(message);
+            }
+        });
+    }
+
+    //the updates pushed by a subscription have no latency, they are counted with their bytes
+    @Override
+    public void subscribe(final String path, final SingleFlight.Callback<Integer> callback) {
+        SingleFlight.Callback<Integer> metered = new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onResult(Integer value) {
+                metrics.record("update " + kind(path), -1, size(path, value), null);
+                callback.onResult(value);
+            }
+
+            @Override
+            public void onError(String message) {
+                metrics.record("update " + kind(path), -1, 0, message);
+                callback.onError(message);
+            }
+        };
+        synchronized (this) {
+            subscriptions.put(callback, metered);
+        }
+        backend.subscribe(path, metered);
+    }
+
+    @Override
+    public void unsubscribe(String path, SingleFlight.Callback<Integer> callback) {
+        SingleFlight.Callback<Integer> metered;
+        synchronized (this) {
+            metered = subscriptions.remove(callback);
+        }
+        if (metered != null) {
+            backend.unsubscribe(path, metered);
+        }
+    }
+
+    //a write of several paths counts once for every kind of path in it, with the bytes of that kind
+    @Override
+    public void write(Map<String, Object> updates, final WriteCallback callback) {
+        final Map<String, Long> bytesByKind = new HashMap<>();
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            String kind = kind(update.getKey());
+            Long bytes = bytesByKind.get(kind);
+            bytesByKind.put(kind, (bytes == null ? 0 : bytes) + size(update.getKey(), update.getValue()));
+        }
+        final Set<String> kinds = new HashSet<>(bytesByKind.keySet());
+
+        final long start = System.nanoTime();
+        backend.write(updates, new WriteCallback() {
+            @Override
+            public void onComplete(String error) {
+                long latencyNs = System.nanoTime() - start;
+                for (String kind : kinds) {
+                    metrics.record("write " + kind, latencyNs, bytesByKind.get(kind), error);
+                }
+                callback.onComplete(error);
+            }
+        });
+    }
+
+    //the kinds of paths FirebaseHelper uses
+    static String kind(String path) {
+        if (path.startsWith(RollupCache.ROLLUPS_PATH)) {
+            return "rollup";
+        } else if (path.endsWith("/steps")) {
+            return "steps";
+        } else if (path.endsWith("/minutes")) {
+            return "minutes";
+        } else if (path.endsWith("Weight")) {
+            return "weight";
+        } else if (path.endsWith("Height")) {
+            return "height";
+        }
+        return "other";
+    }
+
+    static long size(String path, Object value) {
+        return path.length() + String.valueOf(value).length();
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.persometer.helpers;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//step totals per day, week, month and year, kept next to the daily nodes so a history view needs
+//one small read per period instead of one per day; a change of a day's steps is added to its four
+//periods right away, and the totals read most recently stay in a bounded LRU cache;
+//every change gets a sequence number, so once the writes of a day's four totals are acknowledged
+//the listener learns which steps of the day are stored and the rest can be added again after a restart
+public class RollupCache {
+    public static final String ROLLUPS_PATH = "0Rollups/";
+
+    public interface Listener {
+        void stored(int day, int steps);   //the stored totals hold the day's steps up to this value
+    }
+
+    private static class Entry {
+        boolean known;        //value holds the stored total
+        int value;
+        int pendingDelta;     //changes made while the stored total is still being read
+        List<SingleFlight.Callback<Integer>> waiting = new ArrayList<>();
+        long changedSeq;      //last change added to value or pendingDelta
+        long queuedSeq;       //last change in the value queued for writing
+        int queuedValue;
+        long storedSeq;       //last change the database acknowledged
+    }
+
+    private final SingleFlight.Loader<Integer> loader;   //reads a stored total by path
+    private final WriteBehindQueue writeQueue;             //stores a new total
+    private final int capacity;
+    private final Listener listener;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long seq = 0;   //number of the last change
+    //day -> {sequence number, steps of the day} of its changes that are not acknowledged yet, oldest first
+    private final Map<Integer, List<long[]>> unstoredDays = new HashMap<>();
+
+    public RollupCache(SingleFlight.Loader<Integer> loader, WriteBehindQueue writeQueue, int capacity,
+                       Listener listener) {
+        this.loader = loader;
+        this.writeQueue = writeQueue;
+        this.capacity = capacity;
+        this.listener = listener;
+    }
+
+    //adds the change of a day's steps (day as yyyyMMdd) from oldSteps to newSteps to the totals
+    //of its day, week, month and year
+    public void dayChanged(int day, int oldSteps, int newSteps) {
+        int delta = newSteps - oldSteps;
+        if (delta == 0) {
+            return;
+        }
+        List<String> keys = periodsOf(day);
+        List<String> loads = new ArrayList<>(keys.size());
+        synchronized (this) {
+            List<Entry> periods = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                periods.add(entry(key));   //created before the change is numbered, so it is not taken as stored
+            }
+            long change = ++seq;
+            List<long[]> changes = unstoredDays.get(day);
+            if (changes == null) {
+                changes = new ArrayList<>();
+                unstoredDays.put(day, changes);
+            }
+            changes.add(new long[]{change, newSteps});
+
+            for (int i = 0; i < keys.size(); i++) {
+                Entry entry = periods.get(i);
+                entry.changedSeq = change;
+                if (entry.known) {
+                    entry.value += delta;
+                    queue(keys.get(i), entry);
+                } else {
+                    entry.pendingDelta += delta;
+                    if (entry.waiting.isEmpty()) {
+                        loads.add(keys.get(i));
+                    }
+                    entry.waiting.add(null);   //marks the read as started
+                }
+            }
+            evict();
+        }
+        for (String key : loads) {
+            load(key);
+        }
+    }
+
+    //passes the total of a period to the callback, key as returned by day(), week(), month() or year()
+    public void get(String key, SingleFlight.Callback<Integer> callback) {
+        Integer value = null;
+        boolean load = false;
+        synchronized (this) {
+            Entry entry = entry(key);
+            if (entry.known) {
+                value = entry.value;
+            } else {
+                load = entry.waiting.isEmpty();
+                entry.waiting.add(callback);
+            }
+            evict();
+        }
+        if (value != null) {
+            callback.onResult(value);
+        } else if (load) {
+            load(key);
+        }
+    }
+
+    private void load(final String key) {
+        loader.load(ROLLUPS_PATH + key, new SingleFlight.Callback<Integer>() {
+            @Override
+            public void onResult(Integer stored) {
+                List<SingleFlight.Callback<Integer>> callbacks;
+                int value;
+                synchronized (RollupCache.this) {
+                    Entry entry = entry(key);
+                    entry.known = true;
+                    entry.value = (stored == null ? 0 : stored) + entry.pendingDelta;
+                    if (entry.pendingDelta != 0) {
+                        queue(key, entry);
+                    } else {
+                        entry.storedSeq = entry.changedSeq;   //the changes made meanwhile cancelled out
+                    }
+                    entry.pendingDelta = 0;
+                    callbacks = entry.waiting;
+                    entry.waiting = new ArrayList<>();
+                    value = entry.value;
+                }
+                for (SingleFlight.Callback<Integer> callback : callbacks) {
+                    if (callback != null) {
+                        callback.onResult(value);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                List<SingleFlight.Callback<Integer>> callbacks;
+                synchronized (RollupCache.this) {
+                    //pending changes stay and are applied by the next successful read
+                    Entry entry = entry(key);
+                    callbacks = entry.waiting;
+                    entry.waiting = new ArrayList<>();
+                }
+                for (SingleFlight.Callback<Integer> callback : callbacks) {
+                    if (callback != null) {
+                        callback.onError(message);
+                    }
+                }
+            }
+        });
+    }
+
+    private void queue(String key, Entry entry) {
+        entry.queuedSeq = entry.changedSeq;
+        entry.queuedValue = entry.value;
+        writeQueue.put(ROLLUPS_PATH + key, entry.value);
+    }
+
+    //called with every update the database acknowledged, the totals in it are no longer pinned
+    //and the listener is told the steps of every day whose four totals are all stored
+    public void written(Map<String, Object> updates) {
+        Map<Integer, Integer> storedDays = new HashMap<>();
+        synchronized (this) {
+            boolean any = false;
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                if (!update.getKey().startsWith(ROLLUPS_PATH)) {
+                    continue;
+                }
+                Entry entry = entries.get(update.getKey().substring(ROLLUPS_PATH.length()));
+                //a newer value queued meanwhile is acknowledged with its own write
+                if (entry != null && Integer.valueOf(entry.queuedValue).equals(update.getValue())) {
+                    entry.storedSeq = Math.max(entry.storedSeq, entry.queuedSeq);
+                    any = true;
+                }
+            }
+            if (!any) {
+                return;
+            }
+            Iterator<Map.Entry<Integer, List<long[]>>> days = unstoredDays.entrySet().iterator();
+            while (days.hasNext()) {
+                Map.Entry<Integer, List<long[]>> day = days.next();
+                long storedSeq = storedSeq(day.getKey());
+                List<long[]> changes = day.getValue();
+                int stored = 0;
+                while (stored < changes.size() && changes.get(stored)[0] <= storedSeq) {
+                    stored++;
+                }
+                if (stored > 0) {
+                    storedDays.put(day.getKey(), (int) changes.get(stored - 1)[1]);
+                    changes.subList(0, stored).clear();
+                    if (changes.isEmpty()) {
+                        days.remove();
+                    }
+                }
+            }
+            evict();
+        }
+        for (Map.Entry<Integer, Integer> day : storedDays.entrySet()) {
+            listener.stored(day.getKey(), day.getValue());
+        }
+    }
+
+    //last change of the day that all four of its totals have stored
+    private long storedSeq(int day) {
+        long storedSeq = Long.MAX_VALUE;
+        for (String key : periodsOf(day)) {
+            Entry entry = entries.get(key);
+            if (entry != null) {   //an evicted total had stored every change
+                storedSeq = Math.min(storedSeq, entry.storedSeq);
+            }
+        }
+        return storedSeq;
+    }
+
+    private Entry entry(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entry.changedSeq = entry.storedSeq = seq;   //every earlier change was stored before it was evicted
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    //drops the least recently used totals, but never one with changes that the database has not acknowledged
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.storedSeq == entry.changedSeq && entry.waiting.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public static List<String> periodsOf(int day) {
+        List<String> keys = new ArrayList<>(4);
+        keys.add(day(day));
+        keys.add(week(day));
+        keys.add(month(day));
+        keys.add(year(day));
+        return keys;
+    }
+
+    public static String day(int day) {
+        return "D" + day;
+    }
+
+    //weeks start on Monday and are named after it
+    public static String week(int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(day / 10000, day / 100 % 100 - 1, day % 100);
+        int sinceMonday = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -sinceMonday);
+        int monday = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+        return "W" + monday;
+    }
+
+    public static String month(int day) {
+        return "M" + day / 100;
+    }
+
+    public static String year(int day) {
+        return "Y" + day / 10000;
+    }
+}
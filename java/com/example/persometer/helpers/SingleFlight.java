@@ -0,0 +1,100 @@
+package com.example.persometer.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//asynchronous reads by key: a value younger than the TTL is returned from the cache,
+//and callers asking for a key that is already being read wait for that same read
+public class SingleFlight<V> {
+
+    public interface Callback<V> {
+        void onResult(V value);
+
+        void onError(String message);
+    }
+
+    public interface Loader<V> {
+        void load(String key, Callback<V> done);  //must call done exactly once
+    }
+
+    private final Loader<V> loader;
+    private final long ttlMs;
+    private final Clock clock;
+
+    private final Map<String, V> values = new HashMap<>();
+    private final Map<String, Long> loadedAtMs = new HashMap<>();
+    private final Map<String, List<Callback<V>>> waiting = new HashMap<>();   //reads in flight
+
+    public SingleFlight(Loader<V> loader, long ttlMs) {
+        this(loader, ttlMs, Clock.SYSTEM);
+    }
+
+    public SingleFlight(Loader<V> loader, long ttlMs, Clock clock) {
+        this.loader = loader;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    public void get(final String key, Callback<V> callback) {
+        V cached = null;
+        boolean hit = false, start = false;
+        synchronized (this) {
+            Long loadedAt = loadedAtMs.get(key);
+            if (loadedAt != null && clock.nowMs() - loadedAt < ttlMs) {
+                cached = values.get(key);
+                hit = true;
+            } else {
+                List<Callback<V>> callbacks = waiting.get(key);
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>();
+                    waiting.put(key, callbacks);
+                    start = true;
+                }
+                callbacks.add(callback);
+            }
+        }
+
+        if (hit) {
+            callback.onResult(cached);
+            return;
+        }
+        if (!start) {
+            return;   //the read already in flight calls back
+        }
+
+        loader.load(key, new Callback<V>() {
+            @Override
+            public void onResult(V value) {
+                put(key, value);
+                for (Callback<V> waiter : finish(key)) {
+                    waiter.onResult(value);
+                }
+            }
+
+            @Override
+            public void onError(String message) {
+                for (Callback<V> waiter : finish(key)) {
+                    waiter.onError(message);
+                }
+            }
+        });
+    }
+
+    //a value known from elsewhere (a write or a subscription) is fresh as well
+    public synchronized void put(String key, V value) {
+        values.put(key, value);
+        loadedAtMs.put(key, clock.nowMs());
+    }
+
+    //the next get reads the key again
+    public synchronized void invalidate(String key) {
+        loadedAtMs.remove(key);
+    }
+
+    private synchronized List<Callback<V>> finish(String key) {
+        List<Callback<V>> callbacks = waiting.remove(key);
+        return callbacks == null ? new ArrayList<Callback<V>>() : callbacks;
+    }
+}
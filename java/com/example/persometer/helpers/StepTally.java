@@ -0,0 +1,86 @@
+package com.example.persometer.helpers;
+
+//today's step count and the decisions when and what to save, without any Android dependency,
+//so StepCounterService and the offline tools run the same logic on a FirebaseHelper
+public class StepTally {
+    private static final int SAVE_EVERY = 100;   //steps are saved every time the count passes a multiple of 100
+
+    private final FirebaseHelper FBHelper;
+    private int numSteps, saved;
+
+    public StepTally(FirebaseHelper FBHelper) {
+        this.FBHelper = FBHelper;
+        numSteps = FBHelper.getSteps();   //the locally stored steps of today are the starting point
+    }
+
+    //steps made today
+    public int getSteps() {
+        return numSteps;
+    }
+
+    //steps saved into Firebase
+    public int getSaved() {
+        return saved;
+    }
+
+    //adds steps made during a minute of the day (0 = 00:00), returns true if they were saved
+    public boolean addSteps(int minute, int count) {
+        if (numSteps < saved) {
+            numSteps = saved;   //greatest value is set as starting point in step counting
+        }
+        int previousSteps = numSteps;
+        numSteps += count;
+        FBHelper.addIntradaySteps(minute, count);
+
+        if (numSteps / SAVE_EVERY != previousSteps / SAVE_EVERY) {
+            save();
+            return true;
+        }
+        return false;
+    }
+
+    //the greatest of the counted and the saved steps is stored; the decision uses the saved steps known on
+    //the device (the local store, kept up to date by the Firebase subscription), so the steps are stored
+    //right away, also offline and right before a flush
+    public void save() {
+        int savedSteps = FBHelper.getSteps();
+        if (numSteps > savedSteps) {
+            FBHelper.inputSteps(numSteps);
+        } else {
+            numSteps = savedSteps;
+        }
+        saved = numSteps;   //steps saved value is updated
+    }
+
+    //takes over savedSteps, e.g. read from Firebase, if they are greater; returns true if the count changed
+    public boolean refresh(int savedSteps) {
+        if (numSteps < savedSteps) {
+            numSteps = savedSteps;
+            return true;
+        }
+        return false;
+    }
+
+    //takes over the latest known saved steps if they are greater
+    public boolean refresh() {
+        return refresh(FBHelper.getSteps());
+    }
+
+    //stores the finished day right away and starts counting the new one, called at local midnight
+    public void newDay() {
+        numSteps = Math.max(numSteps, FBHelper.getSteps());
+        FBHelper.inputSteps(numSteps);
+        FBHelper.flush();
+
+        FBHelper.newDay();   //Firebase references move to the new date
+        numSteps = 0;
+        saved = 0;
+    }
+
+    //saves and writes everything, then stops the Firebase subscriptions; the tally is not used afterwards
+    public void close() {
+        save();
+        FBHelper.flush();
+        FBHelper.close();
+    }
+}
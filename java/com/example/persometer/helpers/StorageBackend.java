@@ -0,0 +1,22 @@
+package com.example.persometer.helpers;
+
+import java.util.Map;
+
+//the database FirebaseHelper talks to; paths are relative to the database root, e.g. "0Weight"
+public interface StorageBackend {
+
+    interface WriteCallback {
+        void onComplete(String error);  //error is null if the write succeeded
+    }
+
+    //reads the value of the path once, the callback gets null if nothing is stored there
+    void read(String path, SingleFlight.Callback<Integer> callback);
+
+    //passes the current value of the path to the callback and then every change, until unsubscribe
+    void subscribe(String path, SingleFlight.Callback<Integer> callback);
+
+    void unsubscribe(String path, SingleFlight.Callback<Integer> callback);
+
+    //writes every path -> value pair in one update
+    void write(Map<String, Object> updates, WriteCallback callback);
+}
@@ -0,0 +1,131 @@
+package com.example.persometer.helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//collects the values to be stored and writes them later, all together:
+//a newer value for a path replaces the pending one, and the pending values are written
+//once enough new steps were made, once maxDelayMs passed or when flush() is called
+public class WriteBehindQueue {
+
+    public interface Sink {
+        void write(Map<String, Object> updates);  //writes every path -> value pair at once
+    }
+
+    private final Sink sink;
+    private final int stepDelta;     //new steps that cause a write
+    private final long maxDelayMs;   //longest time a value waits to be written
+    private final Clock clock;
+
+    private final Map<String, Object> pending = new HashMap<>();
+    private String stepsPath;        //path the steps were last queued for
+    private int flushedSteps = 0;    //steps value of stepsPath that was last written
+    private int queuedSteps = 0;
+    private long oldestPendingMs;    //when the oldest pending value was queued
+    private ScheduledFuture<?> scheduledFlush;
+    //held from taking the pending values until the sink has them, so a flush of the timer thread and one of
+    //the main thread reach the sink in the order they took their values and a newer value is never overwritten
+    private final Object writeLock = new Object();
+
+    //one timer thread serves every queue
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WriteBehindQueue");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public WriteBehindQueue(Sink sink, int stepDelta, long maxDelayMs) {
+        this(sink, stepDelta, maxDelayMs, Clock.SYSTEM);
+    }
+
+    public WriteBehindQueue(Sink sink, int stepDelta, long maxDelayMs, Clock clock) {
+        this.sink = sink;
+        this.stepDelta = stepDelta;
+        this.maxDelayMs = maxDelayMs;
+        this.clock = clock;
+    }
+
+    //queues a value, replacing the one still waiting for the same path
+    public void put(String path, Object value) {
+        boolean flushNow;
+        synchronized (this) {
+            pending.put(path, value);
+            flushNow = overdue();
+            if (!flushNow) {
+                scheduleFlush();
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    //queues the steps of a day, they are written right away once stepDelta new steps were made
+    public void putSteps(String path, int steps) {
+        boolean flushNow;
+        synchronized (this) {
+            if (!path.equals(stepsPath)) {
+                stepsPath = path;   //a new day starts from nothing written
+                flushedSteps = 0;
+            }
+            queuedSteps = steps;
+            pending.put(path, steps);
+            flushNow = steps - flushedSteps >= stepDelta || overdue();
+            if (!flushNow) {
+                scheduleFlush();
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    //writes everything pending as one update
+    public void flush() {
+        synchronized (writeLock) {
+            Map<String, Object> updates;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                updates = new HashMap<>(pending);
+                pending.clear();
+                if (updates.containsKey(stepsPath)) {
+                    flushedSteps = queuedSteps;
+                }
+            }
+            sink.write(updates);
+        }
+    }
+
+    //true if the oldest pending value waited maxDelayMs already, checked on every put
+    //in case the timer could not run, e.g. while the device was asleep
+    private boolean overdue() {
+        return scheduledFlush != null && clock.nowMs() - oldestPendingMs >= maxDelayMs;
+    }
+
+    //starts the timer of the oldest pending value, later values wait with it
+    private void scheduleFlush() {
+        if (scheduledFlush == null) {
+            oldestPendingMs = clock.nowMs();
+            scheduledFlush = TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, maxDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
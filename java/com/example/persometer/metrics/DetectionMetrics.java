@@ -0,0 +1,137 @@
+package com.example.persometer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//what the step detection pipeline did: written by the detection thread without locks,
+//read at any time from any thread through snapshot()
+public class DetectionMetrics {
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong stepsEmitted = new AtomicLong();
+    private final AtomicLong stepsSuppressed = new AtomicLong();   //threshold crossings within STEP_DELAY_NS
+    private volatile long firstTimestampNs = -1;
+    private volatile long lastTimestampNs = -1;
+    private final Histogram intervals = new Histogram();    //ns between consecutive sensor timestamps
+    private final Histogram jitter = new Histogram();       //ns an interval differs from the one before it
+    private final Histogram processing = new Histogram();   //ns of CPU per sample, mean of each batch
+
+    private long previousIntervalNs = -1;   //only used by the detection thread
+
+    //records samples processed together in processingNs
+    public void batch(long[] timestampsNs, int offset, int count, long processingNs) {
+        if (count <= 0) {
+            return;
+        }
+        samples.addAndGet(count);
+        processing.record(processingNs / count, count, processingNs, processingNs / count);
+
+        //the intervals of a batch are mostly in one bucket, a run of them is recorded at once:
+        //its count goes to the bucket of its first interval, its sum and max are kept exactly
+        long previous = lastTimestampNs;
+        if (firstTimestampNs < 0) {
+            firstTimestampNs = timestampsNs[offset];
+        }
+        long previousInterval = previousIntervalNs;
+        long intervalRun = 0, intervalValue = 0, intervalSum = 0, intervalMax = 0;
+        long jitterRun = 0, jitterValue = 0, jitterSum = 0, jitterMax = 0;
+        int intervalBucket = -1, jitterBucket = -1;
+        for (int i = offset; i < offset + count; i++) {
+            long timeNs = timestampsNs[i];
+            if (previous >= 0) {
+                long intervalNs = Math.max(0, timeNs - previous);
+                int bucket = Histogram.bucket(intervalNs);
+                if (bucket != intervalBucket) {
+                    if (intervalRun > 0) {
+                        intervals.record(intervalValue, intervalRun, intervalSum, intervalMax);
+                    }
+                    intervalBucket = bucket;
+                    intervalValue = intervalNs;
+                    intervalRun = intervalSum = intervalMax = 0;
+                }
+                intervalRun++;
+                intervalSum += intervalNs;
+                intervalMax = Math.max(intervalMax, intervalNs);
+
+                if (previousInterval >= 0) {
+                    long jitterNs = Math.abs(intervalNs - previousInterval);
+                    bucket = Histogram.bucket(jitterNs);
+                    if (bucket != jitterBucket) {
+                        if (jitterRun > 0) {
+                            jitter.record(jitterValue, jitterRun, jitterSum, jitterMax);
+                        }
+                        jitterBucket = bucket;
+                        jitterValue = jitterNs;
+                        jitterRun = jitterSum = jitterMax = 0;
+                    }
+                    jitterRun++;
+                    jitterSum += jitterNs;
+                    jitterMax = Math.max(jitterMax, jitterNs);
+                }
+                previousInterval = intervalNs;
+            }
+            previous = timeNs;
+        }
+        previousIntervalNs = previousInterval;
+        if (intervalRun > 0) {
+            intervals.record(intervalValue, intervalRun, intervalSum, intervalMax);
+        }
+        if (jitterRun > 0) {
+            jitter.record(jitterValue, jitterRun, jitterSum, jitterMax);
+        }
+        lastTimestampNs = previous;
+    }
+
+    public void stepsEmitted(int count) {
+        stepsEmitted.addAndGet(count);
+    }
+
+    public void stepSuppressed() {
+        stepsSuppressed.incrementAndGet();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(samples.get(), stepsEmitted.get(), stepsSuppressed.get(), firstTimestampNs,
+                lastTimestampNs, intervals.snapshot(), jitter.snapshot(), processing.snapshot());
+    }
+
+    public static class Snapshot {
+        public final long samples;
+        public final long stepsEmitted;
+        public final long stepsSuppressed;
+        public final long firstTimestampNs;
+        public final long lastTimestampNs;
+        public final Histogram.Snapshot intervals;
+        public final Histogram.Snapshot jitter;
+        public final Histogram.Snapshot processing;
+
+        Snapshot(long samples, long stepsEmitted, long stepsSuppressed, long firstTimestampNs, long lastTimestampNs,
+                 Histogram.Snapshot intervals, Histogram.Snapshot jitter, Histogram.Snapshot processing) {
+            this.samples = samples;
+            this.stepsEmitted = stepsEmitted;
+            this.stepsSuppressed = stepsSuppressed;
+            this.firstTimestampNs = firstTimestampNs;
+            this.lastTimestampNs = lastTimestampNs;
+            this.intervals = intervals;
+            this.jitter = jitter;
+            this.processing = processing;
+        }
+
+        //sensor rate over all samples so far
+        public double getSamplesPerSecond() {
+            long spanNs = lastTimestampNs - firstTimestampNs;
+            return samples < 2 || spanNs <= 0 ? 0 : (samples - 1) * 1e9 / spanNs;
+        }
+
+        //sensor rate between an earlier snapshot and this one
+        public double getSamplesPerSecondSince(Snapshot earlier) {
+            long spanNs = lastTimestampNs - earlier.lastTimestampNs;
+            return spanNs <= 0 ? 0 : (samples - earlier.samples) * 1e9 / spanNs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("samples=%d (%.1f/s) steps=%d suppressed=%d%n  interval ns: %s%n  jitter ns: %s%n"
+                            + "  processing ns/sample: %s", samples, getSamplesPerSecond(), stepsEmitted,
+                    stepsSuppressed, intervals, jitter, processing);
+        }
+    }
+}
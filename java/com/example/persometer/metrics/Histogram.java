@@ -0,0 +1,115 @@
+package com.example.persometer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//lock-free histogram of non-negative values, e.g. nanoseconds: four buckets per power of two,
+//so every value is known within 25%, in 248 counters for the whole long range
+public class Histogram {
+    private static final int BUCKETS = 248;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    //records the value count times, e.g. the mean time per sample of a whole batch
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+        record(value, count, value * count, value);
+    }
+
+    //records count values that share the bucket of value, e.g. a run of sensor intervals:
+    //the bucket counts are coalesced, while sum and max of the values keep the mean and the max exact
+    public void record(long value, long count, long valuesSum, long valuesMax) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.addAndGet(bucket(value), count);
+        total.addAndGet(count);
+        sum.addAndGet(valuesSum);
+        long current;
+        while (valuesMax > (current = max.get()) && !max.compareAndSet(current, valuesMax)) {
+        }
+    }
+
+    //the values 0-3 have a bucket of their own, above that the two bits after the highest one set choose it
+    static int bucket(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & 3;
+        return exponent * 4 + sub - 4;
+    }
+
+    //smallest value of the bucket
+    static long lowerBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = (bucket + 4) / 4;
+        int sub = (bucket + 4) % 4;
+        return (long) (4 + sub) << (exponent - 2);
+    }
+
+    //a copy of the counts; concurrent records may be half included, which is fine for monitoring
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, total.get(), sum.get(), max.get());
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long total, long sum, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return total == 0 ? 0 : (double) sum / total;
+        }
+
+        //value below which the fraction (0-1) of the records lies, rounded up to the end of its bucket
+        public long getPercentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return i + 1 < counts.length ? Math.min(lowerBound(i + 1) - 1, max) : max;
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + total + " mean=" + Math.round(getMean()) + " p50=" + getPercentile(0.5)
+                    + " p90=" + getPercentile(0.9) + " p99=" + getPercentile(0.99) + " max=" + max;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.persometer.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//database traffic by operation, e.g. "read steps" or "write weight": how often, how long from issue
+//to callback, how many failed and roughly how many bytes; lock-free, read through snapshot()
+public class PersistenceMetrics {
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private static class Operation {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final Histogram latencyNs = new Histogram();
+    }
+
+    private Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) {
+            Operation created = new Operation();
+            operation = operations.putIfAbsent(name, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        return operation;
+    }
+
+    //an operation answered after latencyNs, -1 if it has no latency (e.g. a pushed update);
+    //error is null if it succeeded
+    public void record(String name, long latencyNs, long bytes, String error) {
+        Operation operation = operation(name);
+        operation.count.incrementAndGet();
+        operation.bytes.addAndGet(bytes);
+        if (latencyNs >= 0) {
+            operation.latencyNs.record(latencyNs);
+        }
+        if (error != null) {
+            operation.errors.incrementAndGet();
+        }
+    }
+
+    //operations sorted by name
+    public Snapshot snapshot() {
+        TreeMap<String, OperationSnapshot> copy = new TreeMap<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation operation = entry.getValue();
+            copy.put(entry.getKey(), new OperationSnapshot(operation.count.get(), operation.errors.get(),
+                    operation.bytes.get(), operation.latencyNs.snapshot()));
+        }
+        return new Snapshot(copy);
+    }
+
+    public static class OperationSnapshot {
+        public final long count;
+        public final long errors;
+        public final long bytes;
+        public final Histogram.Snapshot latencyNs;
+
+        OperationSnapshot(long count, long errors, long bytes, Histogram.Snapshot latencyNs) {
+            this.count = count;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.latencyNs = latencyNs;
+        }
+
+        @Override
+        public String toString() {
+            String text = "count=" + count + " errors=" + errors + " bytes=" + bytes;
+            if (latencyNs.getCount() > 0) {
+                text += " latency ms: p50=" + latencyNs.getPercentile(0.5) / 1000000.0
+                        + " p99=" + latencyNs.getPercentile(0.99) / 1000000.0
+                        + " max=" + latencyNs.getMax() / 1000000.0;
+            }
+            return text;
+        }
+    }
+
+    public static class Snapshot {
+        public final Map<String, OperationSnapshot> operations;
+
+        Snapshot(Map<String, OperationSnapshot> operations) {
+            this.operations = operations;
+        }
+
+        //totals over every operation whose name starts with the prefix, e.g. "read"
+        public OperationSnapshot total(String prefix) {
+            long count = 0, errors = 0, bytes = 0;
+            for (Map.Entry<String, OperationSnapshot> entry : operations.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    count += entry.getValue().count;
+                    errors += entry.getValue().errors;
+                    bytes += entry.getValue().bytes;
+                }
+            }
+            return new OperationSnapshot(count, errors, bytes, new Histogram().snapshot());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, OperationSnapshot> entry : operations.entrySet()) {
+                text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+            return text.toString();
+        }
+    }
+}
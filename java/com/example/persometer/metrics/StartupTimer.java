@@ -0,0 +1,49 @@
+package com.example.persometer.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//when each phase of a start finished, in ns after the start; a phase counts the first time it is marked,
+//so an activity created again does not move the phases of the cold start
+public class StartupTimer {
+    //phases of the app's cold start, from the first use in the process until the stored values are shown;
+    //marked by MainActivity and StepCounterService, which may be created without the other
+    public static final StartupTimer COLD_START = new StartupTimer();
+
+    private final long startNs;
+    private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();   //in the order they finished
+
+    public StartupTimer() {
+        this(System.nanoTime());
+    }
+
+    public StartupTimer(long startNs) {
+        this.startNs = startNs;
+    }
+
+    public synchronized void mark(String phase) {
+        if (!phases.containsKey(phase)) {
+            phases.put(phase, System.nanoTime() - startNs);
+        }
+    }
+
+    //ns from the start until the phase finished, -1 if it has not yet
+    public synchronized long elapsedNs(String phase) {
+        Long elapsed = phases.get(phase);
+        return elapsed == null ? -1 : elapsed;
+    }
+
+    //e.g. "local store opened +1.20ms (1.20ms)", the time of the phase itself and in brackets since the start
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder();
+        long previous = 0;
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            long elapsed = phase.getValue();
+            text.append(String.format("%s +%.2fms (%.2fms)%n", phase.getKey(),
+                    (elapsed - previous) / 1000000.0, elapsed / 1000000.0));
+            previous = elapsed;
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.persometer.models;
+
+//steps of one day in 1440 minute buckets; range queries use prefix sums which are brought
+//up to date lazily, so adding steps in time order and querying both cost O(1) on average
+public class IntradaySteps {
+    public static final int MINUTES = 24 * 60;
+
+    private final short[] counts = new short[MINUTES];   //steps made during every minute
+    private final int[] prefix = new int[MINUTES + 1];   //prefix[m] = steps made before minute m
+    private int validUpTo = 0;   //prefix[0..validUpTo] are up to date
+
+    //adds steps to the minute of the day (0 = 00:00), minutes of a 25 hour DST day end up in the last one
+    public void add(int minute, int steps) {
+        minute = Math.max(0, Math.min(MINUTES - 1, minute));
+        counts[minute] = (short) Math.min(Short.MAX_VALUE, counts[minute] + steps);
+        if (minute < validUpTo) {
+            validUpTo = minute;
+        }
+    }
+
+    //steps made from minute from (included) to minute to (excluded), e.g. steps(14 * 60, 15 * 60)
+    public int steps(int from, int to) {
+        update(to);
+        return prefix[to] - prefix[from];
+    }
+
+    public int total() {
+        return steps(0, MINUTES);
+    }
+
+    //steps made during a single minute
+    public int stepsAt(int minute) {
+        return counts[minute];
+    }
+
+    private void update(int to) {
+        while (validUpTo < to) {
+            prefix[validUpTo + 1] = prefix[validUpTo] + counts[validUpTo];
+            validUpTo++;
+        }
+    }
+
+    //compact text form for storage: "gap:steps" pairs in base 36 for the minutes with steps,
+    //where gap is the distance to the previous such minute, e.g. "dc:2q,1:31"
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        int previous = 0;
+        for (int minute = 0; minute < MINUTES; minute++) {
+            if (counts[minute] != 0) {
+                if (encoded.length() > 0) {
+                    encoded.append(',');
+                }
+                encoded.append(Integer.toString(minute - previous, 36))
+                        .append(':')
+                        .append(Integer.toString(counts[minute], 36));
+                previous = minute;
+            }
+        }
+        return encoded.toString();
+    }
+
+    //reads the form written by encode, throws IllegalArgumentException if it is damaged
+    public static IntradaySteps decode(String encoded) {
+        IntradaySteps day = new IntradaySteps();
+        if (encoded.isEmpty()) {
+            return day;
+        }
+        int minute = 0;
+        try {
+            for (String pair : encoded.split(",")) {
+                int colon = pair.indexOf(':');
+                minute += Integer.parseInt(pair.substring(0, colon), 36);
+                day.add(minute, Integer.parseInt(pair.substring(colon + 1), 36));
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Damaged intraday steps: " + encoded, e);
+        }
+        return day;
+    }
+}
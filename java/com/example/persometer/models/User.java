@@ -1,33 +1,36 @@
 package com.example.persometer.models;
 
-import android.util.Log;
-
 public class User {
-    private static final double AVERAGE_WALKING_SPEED = 5000/3600;  // 5km/h ~= 1.38 m/s
-    private static final String TAG = "User class";  //used in logging
     private int bodyWeight; //stores the weight value measured in kg
     private int height;  //stores the height value measured in cm
     private int savedSteps;  //stores the steps saved so far into Firebase value
+    private final WalkingMetrics metrics;  //calories and km of savedSteps, updated on every change
 
     public User() {
         //the constructor defines the default values of the class's attributes
         bodyWeight = 55;
         height = 165;
         savedSteps = 0;
+        metrics = new WalkingMetrics(bodyWeight, height);
     }
 
     //sets bodyWeight from the outside of the class
     public void setBodyWeight(int bodyWeight) {
         this.bodyWeight = bodyWeight;
+        metrics.setProfile(bodyWeight, height);
     }
 
     //sets height from the outside of the class
     public void setHeight(int height) {
         this.height = height;
+        metrics.setProfile(bodyWeight, height);
     }
 
     //sets steps saved into Firebase from the outside of the class
-    public void setSavedSteps(int numSteps) { this.savedSteps = numSteps; }
+    public void setSavedSteps(int numSteps) {
+        this.savedSteps = numSteps;
+        metrics.setSteps(numSteps);
+    }
 
     //gets bodyWeight from the outside of the class
     public int getBodyWeight() {
@@ -42,29 +45,29 @@ public class User {
     //sets steps savedinto Firebase from the outside of the class
     public int getSavedSteps() { return savedSteps; }
 
-    //calculates the number of calories the user burnt while walking
-    //the formula is based on the user's bodyWeight, height and steps made so far
+    //the number of calories the user burnt while walking the steps saved so far,
+    //based on the user's bodyWeight, height and steps
     public double getCalories() {
-        double calPerMin = (0.035 * bodyWeight) + (0.029 * bodyWeight * ((AVERAGE_WALKING_SPEED * AVERAGE_WALKING_SPEED) / height));
-        double stepsPerMin = 110;
-
-        Log.d(TAG,"Calories: bodyWeight = " + bodyWeight);
-        Log.d(TAG,"Calories: height = " + height);
-        Log.d(TAG,"Calories: savedSteps = " + savedSteps);
+        return metrics.getCalories();
+    }
 
-        return (calPerMin * savedSteps) / stepsPerMin; //the value is measured in cal
+    //calculates the number of calories burnt while walking the given steps, e.g. the steps of a week
+    public double getCaloriesFor(int numSteps) {
+        return metrics.caloriesFor(numSteps);
     }
 
-    //calculates the number of km a user made while walking
-    //the formula is based on the user's steps made so far
+    //the number of km a user made while walking the steps saved so far
     public double getKm() {
-        // 1 step == 0.762 m
-        // 1 step == 0.762/1000 km
+        return metrics.getKm();
+    }
 
-        Log.d(TAG,"Km: bodyWeight = " + bodyWeight);
-        Log.d(TAG,"Km: height = " + height);
-        Log.d(TAG,"Km: savedSteps = " + savedSteps);
+    //calculates the number of km walked with the given steps, e.g. the steps of a month
+    public double getKmFor(int numSteps) {
+        return metrics.kmFor(numSteps);
+    }
 
-        return (savedSteps * 0.762) / 1000; //the value is measured in km
+    //calculates calories and km of many days at once, e.g. the daily steps of a year
+    public WalkingMetrics getMetrics() {
+        return metrics;
     }
 }
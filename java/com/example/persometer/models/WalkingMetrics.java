@@ -0,0 +1,88 @@
+package com.example.persometer.models;
+
+//calories and km of walking: the cost of one step is computed once per weight or height change,
+//so following the steps is a multiplication and reading the results costs nothing
+public class WalkingMetrics {
+    //meant as 5km/h ~= 1.38 m/s, but the integer division makes it 1; kept on purpose,
+    //so the calories stay the same as those stored and shown by earlier versions
+    private static final double AVERAGE_WALKING_SPEED = 5000/3600;
+    private static final double STEPS_PER_MIN = 110;
+    private static final double KM_PER_STEP = 0.762 / 1000;  // 1 step == 0.762 m
+
+    private double calPerStep;   //depends on the body weight and the height only
+    private int steps;
+    private double calories, km;   //of steps, kept up to date on every change
+
+    public WalkingMetrics(int bodyWeight, int height) {
+        setProfile(bodyWeight, height);
+    }
+
+    //the formula is based on the user's bodyWeight and height, the steps only scale it
+    public void setProfile(int bodyWeight, int height) {
+        double calPerMin = (0.035 * bodyWeight) + (0.029 * bodyWeight * ((AVERAGE_WALKING_SPEED * AVERAGE_WALKING_SPEED) / height));
+        calPerStep = calPerMin / STEPS_PER_MIN;
+        update();
+    }
+
+    public void setSteps(int steps) {
+        this.steps = steps;
+        update();
+    }
+
+    private void update() {
+        calories = steps * calPerStep;
+        km = steps * KM_PER_STEP;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    //the value is measured in cal
+    public double getCalories() {
+        return calories;
+    }
+
+    //the value is measured in km
+    public double getKm() {
+        return km;
+    }
+
+    //calories burnt while walking the given steps, e.g. the steps of a week
+    public double caloriesFor(int numSteps) {
+        return numSteps * calPerStep;
+    }
+
+    //km walked with the given steps, e.g. the steps of a month
+    public double kmFor(int numSteps) {
+        return numSteps * KM_PER_STEP;
+    }
+
+    //calories and km of every day of dailySteps at once, e.g. a year for a history screen;
+    //one pass of multiplications over plain arrays, which the JIT unrolls and vectorizes
+    public void fillDays(int[] dailySteps, int offset, int count, double[] calories, double[] km) {
+        double calPerStep = this.calPerStep;
+        for (int i = 0; i < count; i++) {
+            double steps = dailySteps[offset + i];
+            calories[i] = steps * calPerStep;
+            km[i] = steps * KM_PER_STEP;
+        }
+    }
+
+    //the metrics are linear in the steps, so the totals of many days need only the sum of their steps
+    public static long sumSteps(int[] dailySteps, int offset, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += dailySteps[offset + i];
+        }
+        return sum;
+    }
+
+    public double totalCalories(int[] dailySteps, int offset, int count) {
+        return sumSteps(dailySteps, offset, count) * calPerStep;
+    }
+
+    public double totalKm(int[] dailySteps, int offset, int count) {
+        return sumSteps(dailySteps, offset, count) * KM_PER_STEP;
+    }
+}
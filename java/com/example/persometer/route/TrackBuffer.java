@@ -0,0 +1,123 @@
+package com.example.persometer.route;
+
+import java.util.Arrays;
+
+//the recorded route: every point is stored as the difference to the one before it, in 1e-5 degrees
+//(about 1.1m) and whole seconds, each difference zigzag-encoded into a varint; a walking step between
+//fixes takes one or two bytes per value, so an hour of fixes every 2s fits in about 10KB
+public class TrackBuffer {
+    private byte[] data = new byte[256];
+    private int size = 0;   //bytes used in data
+    private int points = 0;
+    private int lastLatE5, lastLngE5;
+    private long lastTimeS;
+
+    //degrees to the fixed point unit of the buffer
+    public static int toE5(double degrees) {
+        return (int) Math.round(degrees * 1e5);
+    }
+
+    public static double toDegrees(int e5) {
+        return e5 / 1e5;
+    }
+
+    public void add(double latitude, double longitude, long timeMs) {
+        add(toE5(latitude), toE5(longitude), timeMs / 1000);
+    }
+
+    public void add(int latE5, int lngE5, long timeS) {
+        ensureCapacity(3 * 10);   //a varint of a long takes at most 10 bytes
+        writeVarint(zigzag(latE5 - lastLatE5));
+        writeVarint(zigzag(lngE5 - lastLngE5));
+        writeVarint(zigzag(timeS - lastTimeS));
+        lastLatE5 = latE5;
+        lastLngE5 = lngE5;
+        lastTimeS = timeS;
+        points++;
+    }
+
+    public int size() {
+        return points;
+    }
+
+    //bytes of encoded points
+    public int sizeBytes() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        points = 0;
+        lastLatE5 = lastLngE5 = 0;
+        lastTimeS = 0;
+    }
+
+    //walks the points from the first to the last; points added meanwhile are seen as well
+    public Reader reader() {
+        return new Reader();
+    }
+
+    public class Reader {
+        private int position = 0;
+        private int latE5, lngE5;
+        private long timeS;
+
+        //moves to the next point, false after the last one
+        public boolean next() {
+            if (position >= size) {
+                return false;
+            }
+            latE5 += (int) unzigzag(readVarint());
+            lngE5 += (int) unzigzag(readVarint());
+            timeS += unzigzag(readVarint());
+            return true;
+        }
+
+        public int latE5() {
+            return latE5;
+        }
+
+        public int lngE5() {
+            return lngE5;
+        }
+
+        public long timeS() {
+            return timeS;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            data[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    //small negative differences become small positive numbers: 0, -1, 1, -2 -> 0, 1, 2, 3
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void ensureCapacity(int more) {
+        if (size + more > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.persometer.route;
+
+import java.util.Arrays;
+
+//simplifies the route while it is recorded, so the map draws a bounded number of points:
+//the newest raw points wait in a tail, and once it is full Douglas-Peucker keeps those that leave
+//the line between their neighbours by more than the tolerance; if the kept points still exceed
+//maxPoints, they are simplified again with twice the tolerance
+public class TrackSimplifier {
+    private static final int TAIL_POINTS = 64;   //raw points simplified together
+    private static final double METERS_PER_E5 = 1.11195;   //1e-5 degrees of latitude
+
+    private double toleranceM;
+    private final int maxPoints;
+    private double lngScale = 1;   //meters of 1e-5 degrees of longitude / METERS_PER_E5, at the first point
+
+    //the simplified route, its last point is where the tail starts
+    private int[] keptLat = new int[256];
+    private int[] keptLng = new int[256];
+    private int kept = 0;
+
+    private final int[] tailLat = new int[TAIL_POINTS];
+    private final int[] tailLng = new int[TAIL_POINTS];
+    private int tail = 0;
+
+    //reused by simplify
+    private int[] stack = new int[64];
+    private boolean[] keep = new boolean[256];
+
+    public TrackSimplifier(double toleranceM, int maxPoints) {
+        this.toleranceM = toleranceM;
+        this.maxPoints = maxPoints;
+    }
+
+    //adds a point in the units of TrackBuffer
+    public void add(int latE5, int lngE5) {
+        if (kept == 0) {
+            lngScale = Math.cos(Math.toRadians(TrackBuffer.toDegrees(latE5)));
+            append(latE5, lngE5);
+            return;
+        }
+        tailLat[tail] = latE5;
+        tailLng[tail] = lngE5;
+        tail++;
+        if (tail == TAIL_POINTS) {
+            simplifyTail();
+            if (kept > maxPoints) {
+                toleranceM *= 2;
+                simplifyKept();
+            }
+        }
+    }
+
+    //the points to draw: the simplified route followed by the raw tail, in the units of TrackBuffer
+    public int size() {
+        return kept + tail;
+    }
+
+    public int latE5(int i) {
+        return i < kept ? keptLat[i] : tailLat[i - kept];
+    }
+
+    public int lngE5(int i) {
+        return i < kept ? keptLng[i] : tailLng[i - kept];
+    }
+
+    //meters a point may be off the drawn line, it grows once the route gets longer than maxPoints
+    public double getToleranceM() {
+        return toleranceM;
+    }
+
+    public void clear() {
+        kept = 0;
+        tail = 0;
+    }
+
+    //the tail is simplified from the last kept point on; the points after the last one it keeps stay in
+    //the tail, so the next pass can still drop them; a straight tail keeps only its last point
+    private void simplifyTail() {
+        int n = tail + 1;
+        int[] lat = new int[n];
+        int[] lng = new int[n];
+        lat[0] = keptLat[kept - 1];
+        lng[0] = keptLng[kept - 1];
+        System.arraycopy(tailLat, 0, lat, 1, tail);
+        System.arraycopy(tailLng, 0, lng, 1, tail);
+        simplify(lat, lng, n);
+
+        int lastKept = n - 1;
+        for (int i = n - 2; i > 0; i--) {
+            if (keep[i]) {
+                lastKept = i;
+                break;
+            }
+        }
+        for (int i = 1; i <= lastKept; i++) {
+            if (keep[i]) {
+                append(lat[i], lng[i]);
+            }
+        }
+        tail = n - 1 - lastKept;
+        System.arraycopy(lat, lastKept + 1, tailLat, 0, tail);
+        System.arraycopy(lng, lastKept + 1, tailLng, 0, tail);
+    }
+
+    //the kept points again, with the current tolerance
+    private void simplifyKept() {
+        simplify(keptLat, keptLng, kept);
+        int count = 0;
+        for (int i = 0; i < kept; i++) {
+            if (keep[i]) {
+                keptLat[count] = keptLat[i];
+                keptLng[count] = keptLng[i];
+                count++;
+            }
+        }
+        kept = count;
+    }
+
+    //Douglas-Peucker over the first n points, with a stack instead of recursion;
+    //keep[i] tells if point i stays, the first and the last one always do
+    private void simplify(int[] lat, int[] lng, int n) {
+        if (keep.length < n) {
+            keep = new boolean[Math.max(n, keep.length * 2)];
+        }
+        Arrays.fill(keep, 0, n, false);
+        keep[0] = true;
+        keep[n - 1] = true;
+        double tolerance = toleranceM / METERS_PER_E5;   //in 1e-5 degrees of latitude
+        double toleranceSquared = tolerance * tolerance;
+
+        int top = 0;
+        stack = push(stack, top++, 0);
+        stack = push(stack, top++, n - 1);
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = lng[first] * lngScale, ay = lat[first];
+            double dx = lng[last] * lngScale - ax, dy = lat[last] - ay;
+            double lengthSquared = dx * dx + dy * dy;
+
+            int farthest = -1;
+            double farthestSquared = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double px = lng[i] * lngScale - ax, py = lat[i] - ay;
+                double distanceSquared;
+                if (lengthSquared == 0) {
+                    distanceSquared = px * px + py * py;
+                } else {
+                    //distance to the segment, points beyond its ends are measured to the end
+                    double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+                    double ex = px - t * dx, ey = py - t * dy;
+                    distanceSquared = ex * ex + ey * ey;
+                }
+                if (distanceSquared > farthestSquared) {
+                    farthestSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack = push(stack, top++, first);
+                stack = push(stack, top++, farthest);
+                stack = push(stack, top++, farthest);
+                stack = push(stack, top++, last);
+            }
+        }
+    }
+
+    private static int[] push(int[] stack, int index, int value) {
+        if (index == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[index] = value;
+        return stack;
+    }
+
+    private void append(int latE5, int lngE5) {
+        if (kept == keptLat.length) {
+            keptLat = Arrays.copyOf(keptLat, kept * 2);
+            keptLng = Arrays.copyOf(keptLng, kept * 2);
+        }
+        keptLat[kept] = latE5;
+        keptLng[kept] = lngE5;
+        kept++;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.persometer.sensors;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.util.Log;
+
+import com.example.persometer.steps.SamplingController;
+import com.example.persometer.steps.StepEngine;
+import com.example.persometer.steps.StepListener;
+import com.example.persometer.traces.TraceWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+//counts the steps in software, with a step engine running on the raw accelerometer samples,
+//used on devices without a step counter or step detector;
+//the samples arrive slowly while the device lies still and fast once it moves
+public class AccelerometerStepSource implements StepSource, SensorEventListener2 {
+    private static final String TAG = "AccelerometerSource";
+    private static final int SENSOR_BATCH_SIZE = 64;   //samples passed to the step engine at once
+
+    private final SensorManager sensorManager;
+    private final Sensor accel;
+    private final StepEngine stepEngine;
+    private final SamplingController samplingController = new SamplingController();
+    private final File traceFile;
+    private TraceWriter traceWriter;
+    private Handler handler;
+
+    private final long[] batchTimestamps = new long[SENSOR_BATCH_SIZE];   //timestamps of the buffered samples
+    private final float[] batchValues = new float[3 * SENSOR_BATCH_SIZE];  //x,y,z of the buffered samples
+    private int batchCount = 0;
+    private final ArrayDeque<Runnable> flushes = new ArrayDeque<>();   //run once the flushes complete, in order
+    private boolean rateChanging = false;   //a flush before registering at the new rate is on its way
+    private volatile boolean stopped = false;
+
+    //traceFile may be null, otherwise the raw samples are recorded into it for offline replay
+    public AccelerometerStepSource(SensorManager sensorManager, StepEngine stepEngine, StepListener listener, File traceFile) {
+        this.sensorManager = sensorManager;
+        this.stepEngine = stepEngine;
+        this.traceFile = traceFile;
+        accel = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        stepEngine.registerListener(listener);
+    }
+
+    @Override
+    public void start(Handler handler) {
+        this.handler = handler;
+        stopped = false;
+        if (traceFile != null) {
+            try {
+                traceWriter = new TraceWriter(traceFile);
+            } catch (IOException e) {
+                Log.e(TAG, "start: trace could not be created: " + e.getMessage());
+            }
+        }
+
+        register();
+    }
+
+    //the sensor hub batches the samples, they arrive on the handler's thread
+    private void register() {
+        sensorManager.registerListener(this, accel, samplingController.getPeriodUs(),
+                samplingController.getLatencyUs(), handler);
+    }
+
+    //the sensor hub delivers the samples still in its FIFO, then calls onFlushCompleted,
+    //where they are counted together with the samples buffered here
+    @Override
+    public void flush(final Runnable drained) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (sensorManager.flush(AccelerometerStepSource.this)) {
+                    flushes.add(drained);
+                } else {
+                    processBatch();   //not registered, only the samples buffered here are left
+                    drained.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        processBatch();
+        Runnable drained = flushes.poll();
+        if (drained != null) {
+            drained.run();
+        }
+    }
+
+    @Override
+    public void stop() {
+        //the handler's thread finishes the samples it already has, then closes the trace
+        stopped = true;   //a rate change still waiting for its flush must not register again
+        sensorManager.unregisterListener(this);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                processBatch();
+                //flushes that can no longer complete
+                while (!flushes.isEmpty()) {
+                    flushes.poll().run();
+                }
+                if (traceWriter != null) {
+                    try {
+                        traceWriter.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "stop: trace could not be closed: " + e.getMessage());
+                    }
+                    traceWriter = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        //if accelerometer sensor's state changes, a possible new step is being detected
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            batchTimestamps[batchCount] = event.timestamp;
+            batchValues[3 * batchCount] = event.values[0];
+            batchValues[3 * batchCount + 1] = event.values[1];
+            batchValues[3 * batchCount + 2] = event.values[2];
+            batchCount++;
+
+            //the buffered samples are processed together once the buffer is full
+            if (batchCount == SENSOR_BATCH_SIZE) {
+                processBatch();
+            }
+
+            //the samples still in the sensor hub's FIFO are drained and counted at the old rate,
+            //then the accelerometer is registered at the new one; a change while waiting takes the same flush
+            if (samplingController.update(event.timestamp, event.values[0], event.values[1], event.values[2])
+                    && !rateChanging) {
+                if (sensorManager.flush(this)) {
+                    rateChanging = true;
+                    flushes.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            rateChanging = false;
+                            if (!stopped) {
+                                changeRate();
+                            }
+                        }
+                    });
+                } else {
+                    processBatch();
+                    changeRate();
+                }
+            }
+        }
+    }
+
+    //registers the accelerometer again at the rate the sampling controller chose, after the samples were counted;
+    //unregistering drops the completions of the flushes still queued, so they are done here, like in stop(),
+    //the samples they wait for are counted already
+    private void changeRate() {
+        while (!flushes.isEmpty()) {
+            flushes.poll().run();
+        }
+        sensorManager.unregisterListener(this);
+        register();
+        Log.d(TAG, "Sampling every " + samplingController.getPeriodUs() + "us");
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    //passes the buffered samples to the step engine in one call
+    private void processBatch() {
+        if (batchCount > 0) {
+            if (traceWriter != null) {
+                try {
+                    traceWriter.writeBatch(batchTimestamps, batchValues, 0, batchCount);
+                } catch (IOException e) {
+                    Log.e(TAG, "processBatch: trace could not be written: " + e.getMessage());
+                }
+            }
+            stepEngine.updateAccelBatch(batchTimestamps, batchValues, 0, batchCount);
+            batchCount = 0;
+        }
+    }
+}
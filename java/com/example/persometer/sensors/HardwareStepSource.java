@@ -0,0 +1,105 @@
+package com.example.persometer.sensors;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import com.example.persometer.steps.StepListener;
+
+import java.util.ArrayDeque;
+
+//counts the steps with the step counter or step detector of the sensor hub,
+//so the application processor can sleep while the user walks
+public class HardwareStepSource implements StepSource, SensorEventListener2 {
+    private static final int MAX_REPORT_LATENCY_US = 10000000;   //the sensor hub may hold the steps for up to 10s
+
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final StepListener listener;
+    private long lastCount = -1;   //total of the step counter at its previous event, -1 before the first one
+    private Handler handler;
+    private final ArrayDeque<Runnable> flushes = new ArrayDeque<>();   //drained callbacks, in the order of the flushes
+
+    public HardwareStepSource(SensorManager sensorManager, StepListener listener) {
+        this.sensorManager = sensorManager;
+        this.listener = listener;
+        sensor = stepSensor(sensorManager);
+    }
+
+    //the step counter is preferred, it is filtered by the sensor hub and loses no steps while batching
+    private static Sensor stepSensor(SensorManager sensorManager) {
+        Sensor counter = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER);
+        return counter != null ? counter : sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
+    }
+
+    //true if the device has a step counter or a step detector
+    public static boolean isAvailable(SensorManager sensorManager) {
+        return stepSensor(sensorManager) != null;
+    }
+
+    @Override
+    public void start(Handler handler) {
+        this.handler = handler;
+        lastCount = -1;
+        sensorManager.registerListener(this, sensor, SensorManager.SENSOR_DELAY_NORMAL, MAX_REPORT_LATENCY_US, handler);
+    }
+
+    //the sensor hub delivers the steps it holds, then calls onFlushCompleted
+    @Override
+    public void flush(final Runnable drained) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (sensorManager.flush(HardwareStepSource.this)) {
+                    flushes.add(drained);
+                } else {
+                    drained.run();   //not registered, nothing is buffered
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        Runnable drained = flushes.poll();
+        if (drained != null) {
+            drained.run();
+        }
+    }
+
+    @Override
+    public void stop() {
+        sensorManager.unregisterListener(this);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                //flushes that can no longer complete
+                while (!flushes.isEmpty()) {
+                    flushes.poll().run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (event.sensor.getType() == Sensor.TYPE_STEP_DETECTOR) {
+            listener.step(event.timestamp);   //every event is a single step
+        } else if (event.sensor.getType() == Sensor.TYPE_STEP_COUNTER) {
+            //the counter holds the steps since the device booted, the first event only sets the starting point
+            long count = (long) event.values[0];
+            if (lastCount >= 0 && count > lastCount) {
+                for (long i = lastCount; i < count; i++) {
+                    listener.step(event.timestamp);
+                }
+            }
+            lastCount = count;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.persometer.sensors;
+
+import android.os.Handler;
+
+//delivers the steps made by the user to a StepListener, on the thread of the handler passed to start
+public interface StepSource {
+
+    void start(Handler handler);
+
+    //asks for the steps that are still buffered, in the app or in the sensor hub, to be delivered now;
+    //drained runs on the handler's thread once they were
+    void flush(Runnable drained);
+
+    //stops delivering steps, the samples already buffered in the app are counted first;
+    //the drained callbacks of flushes still running are called then
+    void stop();
+}
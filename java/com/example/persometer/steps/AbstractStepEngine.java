@@ -0,0 +1,74 @@
+package com.example.persometer.steps;
+
+import com.example.persometer.metrics.DetectionMetrics;
+
+//the listener and the batching shared by the engines, which only decide sample by sample
+public abstract class AbstractStepEngine implements StepEngine {
+
+    //steps found inside a batch, delivered together once the batch is processed
+    private long[] batchSteps = new long[16];
+
+    private StepListener listener;
+    private DetectionMetrics metrics;
+    private final long[] singleTimestamp = new long[1];
+
+    @Override
+    public void registerListener(StepListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setMetrics(DetectionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void updateAccel(long timeNs, float x, float y, float z) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean stepped = detectStep(timeNs, x, y, z);
+        if (metrics != null) {
+            singleTimestamp[0] = timeNs;
+            metrics.batch(singleTimestamp, 0, 1, System.nanoTime() - start);
+            metrics.stepsEmitted(stepped ? 1 : 0);
+        }
+        if (stepped) {
+            listener.step(timeNs);
+        }
+    }
+
+    @Override
+    public void updateAccelBatch(long[] timestampsNs, float[] xyz, int offset, int count) {
+        //the time is taken once per batch, the metrics share it out among the samples
+        long start = metrics != null ? System.nanoTime() : 0;
+        int stepCount = 0;
+        for (int i = offset; i < offset + count; i++) {
+            long timeNs = timestampsNs[i];
+            if (detectStep(timeNs, xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2])) {
+                if (stepCount == batchSteps.length) {
+                    long[] grown = new long[stepCount * 2];
+                    System.arraycopy(batchSteps, 0, grown, 0, stepCount);
+                    batchSteps = grown;
+                }
+                batchSteps[stepCount++] = timeNs;
+            }
+        }
+        if (metrics != null) {
+            metrics.batch(timestampsNs, offset, count, System.nanoTime() - start);
+            metrics.stepsEmitted(stepCount);
+        }
+
+        for (int i = 0; i < stepCount; i++) {
+            listener.step(batchSteps[i]);
+        }
+    }
+
+    //returns true if the sample completes a new step
+    protected abstract boolean detectStep(long timeNs, float x, float y, float z);
+
+    //called by detectStep for a step that came too soon after the previous one
+    protected void stepSuppressed() {
+        if (metrics != null) {
+            metrics.stepSuppressed();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.persometer.steps;
+
+//reductions over large float ranges, see SensorFilter for the implementation in use
+interface BulkReductions {
+    float sum(float[] array, int offset, int length);
+
+    float sumOfSquares(float[] array, int offset, int length);
+}
@@ -0,0 +1,64 @@
+package com.example.persometer.steps;
+
+//the StepDetector algorithm with exponential means instead of sample windows:
+//a handful of floats of state and no pass over any ring, whatever the sampling rate
+public class EmaStepDetector extends AbstractStepEngine {
+    private static final long GRAVITY_TIME_CONSTANT_NS = 500000000L;   //about the mean of StepDetector's 1s window
+    private static final long VELOCITY_TIME_CONSTANT_NS = 100000000L;  //about the mean of its 0.2s window
+    private static final float VELOCITY_SCALE = 100f;   //the 0.2s window holds 100 samples at 500Hz
+
+    //sensitivity of the steps, the same as StepDetector's
+    private static final float STEP_THRESHOLD = 75f;
+    private static final int STEP_DELAY_NS = 500000000;
+
+    private boolean started = false;
+    private long lastTimeNs;
+    private float gravityX, gravityY, gravityZ;
+    private float meanZ;   //mean vertical acceleration without gravity
+    private long lastStepTimeNs = 0;
+    private float oldVelocityEstimate = 0;
+
+    @Override
+    protected boolean detectStep(long timeNs, float x, float y, float z) {
+        if (!started) {
+            started = true;
+            lastTimeNs = timeNs;
+            gravityX = x;
+            gravityY = y;
+            gravityZ = z;
+            return false;
+        }
+
+        //the weights depend on the time since the previous sample, not on the rate
+        long dtNs = Math.max(0, timeNs - lastTimeNs);
+        lastTimeNs = timeNs;
+        float gravityAlpha = (float) dtNs / (GRAVITY_TIME_CONSTANT_NS + dtNs);
+        float velocityAlpha = (float) dtNs / (VELOCITY_TIME_CONSTANT_NS + dtNs);
+
+        gravityX += gravityAlpha * (x - gravityX);
+        gravityY += gravityAlpha * (y - gravityY);
+        gravityZ += gravityAlpha * (z - gravityZ);
+        float normalization_factor = (float) Math.sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ);
+
+        float currentZ = (gravityX * x + gravityY * y + gravityZ * z) / normalization_factor - normalization_factor;
+        meanZ += velocityAlpha * (currentZ - meanZ);
+        float velocityEstimate = meanZ * VELOCITY_SCALE;
+
+        boolean stepped = false;
+        if (velocityEstimate > STEP_THRESHOLD && oldVelocityEstimate <= STEP_THRESHOLD) {
+            if (timeNs - lastStepTimeNs > STEP_DELAY_NS) {
+                lastStepTimeNs = timeNs;
+                stepped = true;
+            } else {
+                stepSuppressed();
+            }
+        }
+        oldVelocityEstimate = velocityEstimate;
+        return stepped;
+    }
+
+    @Override
+    public int stateBytes() {
+        return 1 + 2 * 8 + 5 * 4;   //started, lastTimeNs and lastStepTimeNs, gravity x/y/z, meanZ and oldVelocityEstimate
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.persometer.steps;
+
+//counts a step for every peak of the vertical acceleration that is followed by a deep enough valley
+public class PeakStepDetector extends AbstractStepEngine {
+    private static final long GRAVITY_TIME_CONSTANT_NS = 1000000000L;  //gravity follows over about 1s
+    private static final long SMOOTHING_TIME_CONSTANT_NS = 40000000L;  //removes the noise above ~4Hz
+    private static final float MIN_SWING = 2f;        //m/s^2 between a peak and the following valley
+    private static final float HYSTERESIS = 0.5f;     //m/s^2 the signal has to turn to end a peak or a valley
+    private static final long MIN_STEP_INTERVAL_NS = 250000000L;   //at most 4 steps per second
+
+    private boolean started = false;
+    private long lastTimeNs;
+    private float gravityX, gravityY, gravityZ;
+    private float smoothZ;
+    private boolean rising = true;   //looking for a peak, otherwise for a valley
+    private float peak, valley;
+    private long lastStepTimeNs = Long.MIN_VALUE / 2;
+
+    @Override
+    protected boolean detectStep(long timeNs, float x, float y, float z) {
+        if (!started) {
+            started = true;
+            lastTimeNs = timeNs;
+            gravityX = x;
+            gravityY = y;
+            gravityZ = z;
+            return false;
+        }
+
+        long dtNs = Math.max(0, timeNs - lastTimeNs);
+        lastTimeNs = timeNs;
+        float gravityAlpha = (float) dtNs / (GRAVITY_TIME_CONSTANT_NS + dtNs);
+        float smoothingAlpha = (float) dtNs / (SMOOTHING_TIME_CONSTANT_NS + dtNs);
+
+        gravityX += gravityAlpha * (x - gravityX);
+        gravityY += gravityAlpha * (y - gravityY);
+        gravityZ += gravityAlpha * (z - gravityZ);
+        float gravity = (float) Math.sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ);
+        float currentZ = (gravityX * x + gravityY * y + gravityZ * z) / gravity - gravity;
+        smoothZ += smoothingAlpha * (currentZ - smoothZ);
+
+        boolean stepped = false;
+        if (rising) {
+            if (smoothZ > peak) {
+                peak = smoothZ;
+            } else if (smoothZ < peak - HYSTERESIS) {
+                //the peak is over, the valley after it decides whether it was a step
+                rising = false;
+                valley = smoothZ;
+            }
+        } else {
+            if (smoothZ < valley) {
+                valley = smoothZ;
+            } else if (smoothZ > valley + HYSTERESIS) {
+                if (peak - valley > MIN_SWING) {
+                    if (timeNs - lastStepTimeNs > MIN_STEP_INTERVAL_NS) {
+                        lastStepTimeNs = timeNs;
+                        stepped = true;
+                    } else {
+                        stepSuppressed();
+                    }
+                }
+                rising = true;
+                peak = smoothZ;
+            }
+        }
+        return stepped;
+    }
+
+    @Override
+    public int stateBytes() {
+        return 2 + 2 * 8 + 6 * 4;   //started and rising, lastTimeNs and lastStepTimeNs, gravity x/y/z, smoothZ, peak and valley
+    }
+}
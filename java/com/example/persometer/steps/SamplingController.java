@@ -0,0 +1,62 @@
+package com.example.persometer.steps;
+
+//chooses the accelerometer rate: low while the device lies still, high as soon as it moves,
+//so the sensor wakes the app rarely when nobody walks
+public class SamplingController {
+    public static final int IDLE_PERIOD_US = 200000;     //5 samples per second are enough to notice motion
+    public static final int ACTIVE_PERIOD_US = 20000;    //50 samples per second while walking
+    public static final int IDLE_LATENCY_US = 2000000;   //motion is noticed at most 2s late
+    public static final int ACTIVE_LATENCY_US = 5000000;
+
+    private static final float MOTION_THRESHOLD = 1.5f;     //m/s^2 away from the mean magnitude count as motion
+    private static final long GRAVITY_TIME_CONSTANT_NS = 1000000000L;   //the mean magnitude follows over about 1s
+    private static final long STILL_NS = 10000000000L;      //10s without motion fall back to the idle rate
+
+    private boolean active = false;
+    private float meanMagnitude = -1;   //-1 until the first sample
+    private long lastTimeNs;
+    private long lastMotionNs;
+
+    //passes a sample to the controller, returns true if the rate has to change
+    public boolean update(long timeNs, float x, float y, float z) {
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        if (meanMagnitude < 0) {
+            meanMagnitude = magnitude;
+            lastTimeNs = timeNs;
+            lastMotionNs = timeNs;
+            return false;
+        }
+
+        //exponential mean with a weight that depends on the time since the previous sample, not on the rate
+        long dtNs = Math.max(0, timeNs - lastTimeNs);
+        float alpha = (float) dtNs / (GRAVITY_TIME_CONSTANT_NS + dtNs);
+        meanMagnitude += alpha * (magnitude - meanMagnitude);
+        lastTimeNs = timeNs;
+
+        if (Math.abs(magnitude - meanMagnitude) > MOTION_THRESHOLD) {
+            lastMotionNs = timeNs;
+            if (!active) {
+                active = true;
+                return true;
+            }
+        } else if (active && timeNs - lastMotionNs > STILL_NS) {
+            active = false;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    //sampling period to register the accelerometer with
+    public int getPeriodUs() {
+        return active ? ACTIVE_PERIOD_US : IDLE_PERIOD_US;
+    }
+
+    //longest time the sensor hub may hold the samples
+    public int getLatencyUs() {
+        return active ? ACTIVE_LATENCY_US : IDLE_LATENCY_US;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.persometer.steps;
+
+//plain Java reductions, four independent accumulators so the additions can overlap in the CPU
+class ScalarReductions implements BulkReductions {
+
+    @Override
+    public float sum(float[] array, int offset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 < end; i += 4) {
+            s0 += array[i];
+            s1 += array[i + 1];
+            s2 += array[i + 2];
+            s3 += array[i + 3];
+        }
+        for (; i < end; i++) {
+            s0 += array[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float sumOfSquares(float[] array, int offset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 < end; i += 4) {
+            s0 += array[i] * array[i];
+            s1 += array[i + 1] * array[i + 1];
+            s2 += array[i + 2] * array[i + 2];
+            s3 += array[i + 3] * array[i + 3];
+        }
+        for (; i < end; i++) {
+            s0 += array[i] * array[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -2,9 +2,21 @@ package com.example.persometer.steps;
 
 public class SensorFilter {
 
+    //vectorized reductions when the JVM offers them, plain Java otherwise (always on Android)
+    private static final BulkReductions BULK = loadBulkReductions();
+
     private SensorFilter() {
     }
 
+    private static BulkReductions loadBulkReductions() {
+        try {
+            return (BulkReductions) Class.forName("com.example.persometer.steps.VectorReductions")
+                    .getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            return new ScalarReductions();
+        }
+    }
+
     //sums x,y,z coordinates
     public static float sum(float[] array) {
         float retval = 0;
@@ -14,13 +26,22 @@ public class SensorFilter {
         return retval;
     }
 
+    //sums length values starting at offset, meant for large ranges
+    public static float sum(float[] array, int offset, int length) {
+        return BULK.sum(array, offset, length);
+    }
+
     //finds (x,y,z) point
     public static float[] cross(float[] arrayA, float[] arrayB) {
-        float[] retArray = new float[3];
-        retArray[0] = arrayA[1] * arrayB[2] - arrayA[2] * arrayB[1];
-        retArray[1] = arrayA[2] * arrayB[0] - arrayA[0] * arrayB[2];
-        retArray[2] = arrayA[0] * arrayB[1] - arrayA[1] * arrayB[0];
-        return retArray;
+        return cross(arrayA, arrayB, new float[3]);
+    }
+
+    //finds (x,y,z) point and stores it into out, which must not be arrayA or arrayB (the result would be wrong)
+    public static float[] cross(float[] arrayA, float[] arrayB, float[] out) {
+        out[0] = arrayA[1] * arrayB[2] - arrayA[2] * arrayB[1];
+        out[1] = arrayA[2] * arrayB[0] - arrayA[0] * arrayB[2];
+        out[2] = arrayA[0] * arrayB[1] - arrayA[1] * arrayB[0];
+        return out;
     }
 
     //normalization of the vector
@@ -32,6 +53,11 @@ public class SensorFilter {
         return (float) Math.sqrt(retval);
     }
 
+    //normalization of length values starting at offset, meant for large ranges
+    public static float norm(float[] array, int offset, int length) {
+        return (float) Math.sqrt(BULK.sumOfSquares(array, offset, length));
+    }
+
 
     //finds the intersection of the coordinates
     public static float dot(float[] a, float[] b) {
@@ -41,12 +67,16 @@ public class SensorFilter {
 
     //normalization formula
     public static float[] normalize(float[] a) {
-        float[] retval = new float[a.length];
+        return normalizeInto(a, new float[a.length]);
+    }
+
+    //normalization formula, the result is stored into out (which may be a itself)
+    public static float[] normalizeInto(float[] a, float[] out) {
         float norm = norm(a);
         for (int i = 0; i < a.length; i++) {
-            retval[i] = a[i] / norm;
+            out[i] = a[i] / norm;
         }
-        return retval;
+        return out;
     }
 
 }
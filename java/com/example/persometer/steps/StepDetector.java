@@ -1,67 +1,194 @@
 package com.example.persometer.steps;
 
-public class StepDetector {
+//the original engine: the global z vector is the mean of a sliding window of samples,
+//a step is counted when the sum of the vertical acceleration over a shorter window crosses a threshold
+public class StepDetector extends AbstractStepEngine {
 
-    private static final int ACCEL_RING_SIZE = 500;
-    private static final int VEL_RING_SIZE = 100;
+    //the windows are defined in time, so the detection behaves the same at any sampling rate
+    //(the lengths are those of the former 500 and 100 sample rings at SENSOR_DELAY_FASTEST, about 500Hz)
+    private static final long ACCEL_WINDOW_NS = 1000000000L;   //the global z vector is the mean of the last 1s
+    private static final long VEL_WINDOW_NS = 200000000L;      //the velocity is the sum of the last 0.2s
+    private static final long REFERENCE_INTERVAL_NS = 2000000L;  //STEP_THRESHOLD was tuned for 500 samples per second
+    //fewer samples in the velocity window (below 25 per second, e.g. the idle rate of SamplingController)
+    //cannot tell a step from noise once the sum is scaled up to the reference rate, no step is counted then
+    private static final int MIN_VEL_SAMPLES = 5;
 
     //sensitivity of the steps
     private static final float STEP_THRESHOLD = 75f;
     private static final int STEP_DELAY_NS = 500000000;
 
-    private int accelRingCounter = 0;
-    private float[] accelRingX = new float[ACCEL_RING_SIZE];
-    private float[] accelRingY = new float[ACCEL_RING_SIZE];
-    private float[] accelRingZ = new float[ACCEL_RING_SIZE];
-    private int velRingCounter = 0;
-    private float[] velRing = new float[VEL_RING_SIZE];
+    //the rings hold the samples inside the windows and grow when the sampling rate needs it,
+    //their sizes are powers of two
+    private float[] accelRingX = new float[1024];
+    private float[] accelRingY = new float[1024];
+    private float[] accelRingZ = new float[1024];
+    private long[] accelRingTime = new long[1024];
+    private int accelHead = 0;    //index the next sample is stored at
+    private int accelCount = 0;   //samples inside the window
+    private float[] velRing = new float[256];
+    private long[] velRingTime = new long[256];
+    private int velHead = 0;
+    private int velCount = 0;
     private long lastStepTimeNs = 0;
     private float oldVelocityEstimate = 0;
 
-    private StepListener listener;
+    //running sums of the windows, so a sample costs O(1) instead of a pass over every window
+    //(kept in double so the result matches the plain float pass over the window)
+    private double accelSumX = 0;
+    private double accelSumY = 0;
+    private double accelSumZ = 0;
+    private double velSum = 0;
 
-    public void registerListener(StepListener listener) {
-        this.listener = listener;
+    @Override
+    public int stateBytes() {
+        return accelRingX.length * (3 * 4 + 8) + velRing.length * (4 + 8) + 4 * 8 + 4 * 4 + 8 + 4;
     }
 
-
-    public void updateAccel(long timeNs, float x, float y, float z) {
-        float[] currentAccel = new float[3];
-        currentAccel[0] = x;
-        currentAccel[1] = y;
-        currentAccel[2] = z;
+    //returns true if the sample completes a new step
+    @Override
+    protected boolean detectStep(long timeNs, float x, float y, float z) {
+        //a time before the newest sample (e.g. another clock or a replay starting over) would keep every
+        //sample inside the windows for good, so the detection starts over from this sample
+        int mask = accelRingX.length - 1;
+        if (accelCount > 0 && timeNs < accelRingTime[(accelHead - 1) & mask]) {
+            reset();
+        }
 
         // Update the guess of where the global z vector is.
-        accelRingCounter++;
-        accelRingX[accelRingCounter % ACCEL_RING_SIZE] = currentAccel[0];
-        accelRingY[accelRingCounter % ACCEL_RING_SIZE] = currentAccel[1];
-        accelRingZ[accelRingCounter % ACCEL_RING_SIZE] = currentAccel[2];
+        //the samples older than the window leave it and the newest one enters it
+        while (accelCount > 0) {
+            int oldest = (accelHead - accelCount) & mask;
+            if (timeNs - accelRingTime[oldest] < ACCEL_WINDOW_NS) {
+                break;
+            }
+            accelSumX -= accelRingX[oldest];
+            accelSumY -= accelRingY[oldest];
+            accelSumZ -= accelRingZ[oldest];
+            accelCount--;
+        }
+        if (accelCount == accelRingX.length) {
+            growAccelRing();
+            mask = accelRingX.length - 1;
+        }
+        accelSumX += x;
+        accelSumY += y;
+        accelSumZ += z;
+        accelRingX[accelHead] = x;
+        accelRingY[accelHead] = y;
+        accelRingZ[accelHead] = z;
+        accelRingTime[accelHead] = timeNs;
+        accelHead = (accelHead + 1) & mask;
+        accelCount++;
 
-        float[] worldZ = new float[3];
-        worldZ[0] = SensorFilter.sum(accelRingX) / Math.min(accelRingCounter, ACCEL_RING_SIZE);
-        worldZ[1] = SensorFilter.sum(accelRingY) / Math.min(accelRingCounter, ACCEL_RING_SIZE);
-        worldZ[2] = SensorFilter.sum(accelRingZ) / Math.min(accelRingCounter, ACCEL_RING_SIZE);
+        //once per ring turn the sums are rebuilt from the window, so float rounding cannot drift
+        if (accelHead == 0) {
+            accelSumX = windowSum(accelRingX, accelCount);
+            accelSumY = windowSum(accelRingY, accelCount);
+            accelSumZ = windowSum(accelRingZ, accelCount);
+        }
 
-        float normalization_factor = SensorFilter.norm(worldZ);
+        float worldZX = (float) accelSumX / accelCount;
+        float worldZY = (float) accelSumY / accelCount;
+        float worldZZ = (float) accelSumZ / accelCount;
 
-        worldZ[0] = worldZ[0] / normalization_factor;
-        worldZ[1] = worldZ[1] / normalization_factor;
-        worldZ[2] = worldZ[2] / normalization_factor;
+        float normalization_factor = (float) Math.sqrt(worldZX * worldZX + worldZY * worldZY + worldZZ * worldZZ);
 
-        float currentZ = SensorFilter.dot(worldZ, currentAccel) - normalization_factor;
-        velRingCounter++;
-        velRing[velRingCounter % VEL_RING_SIZE] = currentZ;
+        worldZX = worldZX / normalization_factor;
+        worldZY = worldZY / normalization_factor;
+        worldZZ = worldZZ / normalization_factor;
 
-        //estimate speed of the accelerometer change
-        float velocityEstimate = SensorFilter.sum(velRing);
+        float currentZ = worldZX * x + worldZY * y + worldZZ * z - normalization_factor;
+        int velMask = velRing.length - 1;
+        while (velCount > 0) {
+            int oldest = (velHead - velCount) & velMask;
+            if (timeNs - velRingTime[oldest] < VEL_WINDOW_NS) {
+                break;
+            }
+            velSum -= velRing[oldest];
+            velCount--;
+        }
+        if (velCount == velRing.length) {
+            growVelRing();
+            velMask = velRing.length - 1;
+        }
+        velSum += currentZ;
+        velRing[velHead] = currentZ;
+        velRingTime[velHead] = timeNs;
+        velHead = (velHead + 1) & velMask;
+        velCount++;
+        if (velHead == 0) {
+            velSum = windowSum(velRing, velCount);
+        }
+
+        //estimate speed of the accelerometer change, scaled to the sum it would have at the reference rate
+        float velocityEstimate = (float) velSum;
+        if (velCount < MIN_VEL_SAMPLES) {
+            velocityEstimate = 0;
+        } else if (accelCount > 1) {
+            long oldestTimeNs = accelRingTime[(accelHead - accelCount) & mask];
+            double intervalNs = (double) (timeNs - oldestTimeNs) / (accelCount - 1);
+            velocityEstimate = (float) (velSum * (intervalNs / REFERENCE_INTERVAL_NS));
+        }
 
         //if current speed if bigger than STEP_THRESHOLD and old speed is less or equal
         //to STEP_THRESHOLD, there has been another sensor change  ==>  another step occurred
-        if (velocityEstimate > STEP_THRESHOLD && oldVelocityEstimate <= STEP_THRESHOLD
-                && (timeNs - lastStepTimeNs > STEP_DELAY_NS)) {
-            listener.step(timeNs);
-            lastStepTimeNs = timeNs;
+        boolean stepped = false;
+        if (velocityEstimate > STEP_THRESHOLD && oldVelocityEstimate <= STEP_THRESHOLD) {
+            if (timeNs - lastStepTimeNs > STEP_DELAY_NS) {
+                lastStepTimeNs = timeNs;
+                stepped = true;
+            } else {
+                stepSuppressed();
+            }
         }
         oldVelocityEstimate = velocityEstimate;
+        return stepped;
+    }
+
+    //empties the windows and forgets the last step
+    private void reset() {
+        accelCount = 0;
+        velCount = 0;
+        accelSumX = 0;
+        accelSumY = 0;
+        accelSumZ = 0;
+        velSum = 0;
+        oldVelocityEstimate = 0;
+        lastStepTimeNs = 0;
+    }
+
+    //sums the count values before index 0 of a full turn, i.e. the last count values of the ring
+    private static double windowSum(float[] ring, int count) {
+        return SensorFilter.sum(ring, ring.length - count, count);
+    }
+
+    //doubles the gravity ring, the oldest sample moves to index 0
+    private void growAccelRing() {
+        accelRingX = grow(accelRingX, accelHead);
+        accelRingY = grow(accelRingY, accelHead);
+        accelRingZ = grow(accelRingZ, accelHead);
+        accelRingTime = grow(accelRingTime, accelHead);
+        accelHead = accelCount;
+    }
+
+    private void growVelRing() {
+        velRing = grow(velRing, velHead);
+        velRingTime = grow(velRingTime, velHead);
+        velHead = velCount;
+    }
+
+    //copies a full ring whose oldest value is at head into an array twice as long
+    private static float[] grow(float[] ring, int head) {
+        float[] grown = new float[ring.length * 2];
+        System.arraycopy(ring, head, grown, 0, ring.length - head);
+        System.arraycopy(ring, 0, grown, ring.length - head, head);
+        return grown;
+    }
+
+    private static long[] grow(long[] ring, int head) {
+        long[] grown = new long[ring.length * 2];
+        System.arraycopy(ring, head, grown, 0, ring.length - head);
+        System.arraycopy(ring, 0, grown, ring.length - head, head);
+        return grown;
     }
 }
@@ -0,0 +1,22 @@
+package com.example.persometer.steps;
+
+import com.example.persometer.metrics.DetectionMetrics;
+
+//turns accelerometer samples into steps, StepEngines.create picks an implementation by name
+public interface StepEngine {
+
+    void registerListener(StepListener listener);
+
+    //metrics may be null to stop recording them
+    void setMetrics(DetectionMetrics metrics);
+
+    void updateAccel(long timeNs, float x, float y, float z);
+
+    //processes count samples starting at offset, where sample i has the timestamp timestampsNs[i]
+    //and the coordinates xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]
+    //the steps found in the batch are passed to the listener after the whole batch was processed
+    void updateAccelBatch(long[] timestampsNs, float[] xyz, int offset, int count);
+
+    //approximate bytes of state kept between samples, for comparing the engines
+    int stateBytes();
+}
@@ -0,0 +1,29 @@
+package com.example.persometer.steps;
+
+//the step engines by name, so the app and the offline tools can choose one at runtime
+public class StepEngines {
+    public static final String WINDOW = "window";   //StepDetector, sliding windows over the last samples
+    public static final String EMA = "ema";         //EmaStepDetector, exponential means with O(1) state
+    public static final String PEAK = "peak";       //PeakStepDetector, peak and valley of the vertical acceleration
+
+    private StepEngines() {
+    }
+
+    public static String[] names() {
+        return new String[]{WINDOW, EMA, PEAK};
+    }
+
+    //creates a new engine, throws IllegalArgumentException for an unknown name
+    public static StepEngine create(String name) {
+        switch (name) {
+            case WINDOW:
+                return new StepDetector();
+            case EMA:
+                return new EmaStepDetector();
+            case PEAK:
+                return new PeakStepDetector();
+            default:
+                throw new IllegalArgumentException("Unknown step engine: " + name);
+        }
+    }
+}
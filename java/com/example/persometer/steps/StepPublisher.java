@@ -0,0 +1,155 @@
+package com.example.persometer.steps;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//passes the detected steps on to any number of subscribers, each on its own executor,
+//in the spirit of java.util.concurrent.Flow (which Android only has since API 30);
+//the detection thread never waits for a subscriber: a slow subscriber gets fewer, bigger deliveries,
+//at most one of them is queued on its executor at any time
+public class StepPublisher implements StepListener {
+
+    //gets the latest step count only, the counts in between are skipped when the subscriber is slow
+    public interface CountSubscriber {
+        void onCount(long totalSteps, long lastStepTimeNs);
+    }
+
+    //gets the timestamp of every step, the steps made since the previous delivery come together
+    public interface BatchSubscriber {
+        void onSteps(long[] timestampsNs, int count);
+    }
+
+    public interface Subscription {
+        //stops the deliveries, one that is already queued may still arrive
+        void cancel();
+
+        //delivers the steps published so far right away, on the calling thread, which must be the one
+        //the executor runs the deliveries on; e.g. before a save that has to include every step
+        void deliverNow();
+    }
+
+    private final AtomicLong totalSteps = new AtomicLong();
+    private volatile long lastStepTimeNs;
+    private final CopyOnWriteArrayList<Delivery> deliveries = new CopyOnWriteArrayList<>();
+
+    //called by the step engine or step source, on the detection thread
+    @Override
+    public void step(long timeNs) {
+        lastStepTimeNs = timeNs;
+        totalSteps.incrementAndGet();
+        for (Delivery delivery : deliveries) {
+            delivery.step(timeNs);
+        }
+    }
+
+    //steps published so far
+    public long getTotalSteps() {
+        return totalSteps.get();
+    }
+
+    public Subscription subscribeCount(final CountSubscriber subscriber, Executor executor) {
+        return add(new Delivery(executor) {
+            private long delivered = -1;
+
+            @Override
+            void deliver() {
+                long total = totalSteps.get();
+                if (total != delivered) {   //a later step may have been delivered with an earlier one
+                    delivered = total;
+                    subscriber.onCount(total, lastStepTimeNs);
+                }
+            }
+        });
+    }
+
+    public Subscription subscribeBatches(final BatchSubscriber subscriber, Executor executor) {
+        return add(new Delivery(executor) {
+            private long[] pending = new long[16];
+            private int pendingCount = 0;
+
+            @Override
+            void step(long timeNs) {
+                synchronized (this) {
+                    if (pendingCount == pending.length) {
+                        long[] grown = new long[pendingCount * 2];
+                        System.arraycopy(pending, 0, grown, 0, pendingCount);
+                        pending = grown;
+                    }
+                    pending[pendingCount++] = timeNs;
+                }
+                super.step(timeNs);
+            }
+
+            @Override
+            void deliver() {
+                long[] timestampsNs;
+                int count;
+                synchronized (this) {
+                    //the subscriber may keep the array, a new one collects the next steps
+                    timestampsNs = pending;
+                    count = pendingCount;
+                    pending = new long[Math.max(16, count)];
+                    pendingCount = 0;
+                }
+                if (count > 0) {
+                    subscriber.onSteps(timestampsNs, count);
+                }
+            }
+        });
+    }
+
+    private Subscription add(final Delivery delivery) {
+        deliveries.add(delivery);
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                delivery.cancelled = true;
+                deliveries.remove(delivery);
+            }
+
+            @Override
+            public void deliverNow() {
+                if (!delivery.cancelled) {
+                    delivery.deliver();
+                }
+            }
+        };
+    }
+
+    //one subscriber and its executor
+    private abstract static class Delivery implements Runnable {
+        private final Executor executor;
+        private final AtomicBoolean scheduled = new AtomicBoolean();   //a delivery is queued or running
+        private final AtomicBoolean dirty = new AtomicBoolean();       //steps were made since it started
+        volatile boolean cancelled = false;
+
+        Delivery(Executor executor) {
+            this.executor = executor;
+        }
+
+        void step(long timeNs) {
+            dirty.set(true);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            dirty.set(false);
+            if (!cancelled) {
+                deliver();
+            }
+            //a step made during the delivery queues the next one, so deliver never runs twice at the same time
+            scheduled.set(false);
+            if (dirty.get() && !cancelled && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        //runs on the executor
+        abstract void deliver();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.persometer.traces;
+
+//what a replay of one trace produced
+public class ReplayResult {
+    private final long samples;
+    private final long[] stepTimestampsNs;
+    private final long elapsedNs;
+
+    ReplayResult(long samples, long[] stepTimestampsNs, long elapsedNs) {
+        this.samples = samples;
+        this.stepTimestampsNs = stepTimestampsNs;
+        this.elapsedNs = elapsedNs;
+    }
+
+    //number of samples fed to the detector
+    public long getSamples() {
+        return samples;
+    }
+
+    //timestamps passed to StepListener.step, in order
+    public long[] getStepTimestampsNs() {
+        return stepTimestampsNs;
+    }
+
+    public int getStepCount() {
+        return stepTimestampsNs.length;
+    }
+
+    //wall clock time the replay took
+    public long getElapsedNs() {
+        return elapsedNs;
+    }
+
+    public double getSamplesPerSecond() {
+        return elapsedNs == 0 ? 0 : samples * 1e9 / elapsedNs;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.persometer.traces;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//read only, memory mapped view of a trace file
+public class TraceFile implements Closeable {
+    //records per mapped region, keeps every region below the 2GB limit of a MappedByteBuffer
+    private static final int RECORDS_PER_REGION = (Integer.MAX_VALUE / TraceFormat.RECORD_SIZE) & ~0xFFF;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+
+    public TraceFile(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length < TraceFormat.HEADER_SIZE) {
+                throw new IOException("Not a trace file: " + path);
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceFormat.HEADER_SIZE);
+            header.order(TraceFormat.ORDER);
+            if (header.getInt(0) != TraceFormat.MAGIC) {
+                throw new IOException("Not a trace file: " + path);
+            }
+            if (header.getInt(4) != TraceFormat.VERSION) {
+                throw new IOException("Unsupported trace version " + header.getInt(4) + ": " + path);
+            }
+
+            //a record cut off by a crash while recording is ignored
+            size = (length - TraceFormat.HEADER_SIZE) / TraceFormat.RECORD_SIZE;
+            int regionCount = (int) ((size + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION);
+            regions = new MappedByteBuffer[regionCount];
+            for (int r = 0; r < regionCount; r++) {
+                long first = (long) r * RECORDS_PER_REGION;
+                long records = Math.min(RECORDS_PER_REGION, size - first);
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        TraceFormat.HEADER_SIZE + first * TraceFormat.RECORD_SIZE,
+                        records * TraceFormat.RECORD_SIZE);
+                regions[r].order(TraceFormat.ORDER);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    //number of samples in the trace
+    public long size() {
+        return size;
+    }
+
+    //copies count samples starting at sample first into timestampsNs[0..count) and xyz[0..3 * count)
+    public void read(long first, long[] timestampsNs, float[] xyz, int count) {
+        for (int i = 0; i < count; i++) {
+            long sample = first + i;
+            MappedByteBuffer region = regions[(int) (sample / RECORDS_PER_REGION)];
+            int position = (int) (sample % RECORDS_PER_REGION) * TraceFormat.RECORD_SIZE;
+            timestampsNs[i] = region.getLong(position);
+            xyz[3 * i] = region.getFloat(position + 8);
+            xyz[3 * i + 1] = region.getFloat(position + 12);
+            xyz[3 * i + 2] = region.getFloat(position + 16);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.persometer.traces;
+
+import java.nio.ByteOrder;
+
+//layout of a recorded accelerometer trace:
+//an 8 byte header (magic, version) followed by fixed size records of (timestamp, x, y, z),
+//everything little endian, so a record can be found by its index and a cut off tail is simply ignored
+final class TraceFormat {
+    static final int MAGIC = 0x52544D50;  //"PMTR" read as a little endian int
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 8 + 3 * 4;  //long timestamp in ns + 3 float coordinates
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private TraceFormat() {
+    }
+}
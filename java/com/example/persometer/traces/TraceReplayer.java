@@ -0,0 +1,71 @@
+package com.example.persometer.traces;
+
+import com.example.persometer.steps.StepEngine;
+import com.example.persometer.steps.StepEngines;
+import com.example.persometer.steps.StepListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+//feeds a recorded trace through a fresh step engine as fast as the CPU allows
+public class TraceReplayer {
+    private static final int BATCH_SIZE = 4096;
+
+    private final String engine;
+    private final long[] timestampsNs = new long[BATCH_SIZE];
+    private final float[] xyz = new float[3 * BATCH_SIZE];
+
+    public TraceReplayer() {
+        this(StepEngines.WINDOW);
+    }
+
+    //engine is one of StepEngines.names()
+    public TraceReplayer(String engine) {
+        this.engine = engine;
+    }
+
+    public ReplayResult replay(File path) throws IOException {
+        TraceFile trace = new TraceFile(path);
+        try {
+            return replay(trace);
+        } finally {
+            trace.close();
+        }
+    }
+
+    public ReplayResult replay(TraceFile trace) {
+        final StepCollector steps = new StepCollector();
+        StepEngine detector = StepEngines.create(engine);
+        detector.registerListener(steps);
+
+        long start = System.nanoTime();
+        long size = trace.size();
+        for (long first = 0; first < size; first += BATCH_SIZE) {
+            int count = (int) Math.min(BATCH_SIZE, size - first);
+            trace.read(first, timestampsNs, xyz, count);
+            detector.updateAccelBatch(timestampsNs, xyz, 0, count);
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        return new ReplayResult(size, steps.toArray(), elapsedNs);
+    }
+
+    //keeps the step timestamps without boxing them
+    private static class StepCollector implements StepListener {
+        private long[] timestampsNs = new long[256];
+        private int count = 0;
+
+        @Override
+        public void step(long timeNs) {
+            if (count == timestampsNs.length) {
+                timestampsNs = Arrays.copyOf(timestampsNs, count * 2);
+            }
+            timestampsNs[count++] = timeNs;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(timestampsNs, count);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.persometer.traces;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//records raw accelerometer samples into a trace file
+public class TraceWriter implements Closeable {
+    private static final int BUFFERED_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * TraceFormat.RECORD_SIZE)
+            .order(TraceFormat.ORDER);
+    private long samples = 0;
+
+    public TraceWriter(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(TraceFormat.HEADER_SIZE).order(TraceFormat.ORDER);
+        header.putInt(TraceFormat.MAGIC);
+        header.putInt(TraceFormat.VERSION);
+        header.flip();
+        writeFully(header);
+    }
+
+    public void write(long timeNs, float x, float y, float z) throws IOException {
+        if (buffer.remaining() < TraceFormat.RECORD_SIZE) {
+            flush();
+        }
+        buffer.putLong(timeNs);
+        buffer.putFloat(x);
+        buffer.putFloat(y);
+        buffer.putFloat(z);
+        samples++;
+    }
+
+    //same layout as StepDetector.updateAccelBatch
+    public void writeBatch(long[] timestampsNs, float[] xyz, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            write(timestampsNs[i], xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+        }
+    }
+
+    //number of samples written so far
+    public long getSamples() {
+        return samples;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.persometer.helpers;
+
+import com.example.persometer.models.IntradaySteps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+
+//times what the app's storage startup does, phase by phase, on a plain JVM: a local store holding
+//a history of days and today's intraday steps is written, then FirebaseHelper is created on it
+//against an InMemoryBackend; the first run is cold (classes loaded, files read the first time)
+//usage: ColdStartTimer [--days N] [--runs R]
+//FirebaseHelper logs through android.util.Log, so run it with the mockable android.jar
+//of the JVM unit tests (unitTests.returnDefaultValues) on the classpath
+public class ColdStartTimer {
+    private static final String[] PHASES = {"local store opened", "intraday loaded", "local changes queued", "subscribed"};
+
+    public static void main(String[] args) throws IOException {
+        int days = 365, runs = 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--days")) {
+                days = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        File dir = File.createTempFile("coldstart", "");
+        dir.delete();
+        dir.mkdirs();
+        File storeFile = new File(dir, "persometer.store");
+        writeHistory(storeFile, days);
+
+        //ns of every phase, and of the whole constructor in the last column, per run
+        long[][] times = new long[runs][PHASES.length + 1];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            FirebaseHelper helper = new FirebaseHelper(storeFile, new InMemoryBackend(), Clock.SYSTEM);
+            times[run][PHASES.length] = System.nanoTime() - start;
+            long previous = 0;
+            for (int p = 0; p < PHASES.length; p++) {
+                long elapsed = helper.getStartupTimes().elapsedNs(PHASES[p]);
+                times[run][p] = elapsed - previous;
+                previous = elapsed;
+            }
+            helper.close();
+        }
+
+        System.out.println("days stored: " + days + ", runs: " + runs);
+        System.out.printf("%-22s %10s %10s%n", "phase", "cold ms", "warm ms");
+        for (int p = 0; p <= PHASES.length; p++) {
+            String name = p < PHASES.length ? PHASES[p] : "FirebaseHelper total";
+            System.out.printf("%-22s %10.3f %10.3f%n", name, times[0][p] / 1000000.0, warmMedian(times, p) / 1000000.0);
+        }
+    }
+
+    //a store like one after a year of use: one synced record per day, the profile, and today's minutes
+    private static void writeHistory(File storeFile, int days) throws IOException {
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+        Calendar calendar = Calendar.getInstance();
+        int today = Integer.parseInt(dayFormat.format(calendar.getTime()));
+
+        LocalStore store = new LocalStore(storeFile);
+        store.putWeight(70);
+        store.weightSynced(70);
+        store.putHeight(175);
+        store.heightSynced(175);
+        for (int d = 0; d < days; d++) {
+            int day = Integer.parseInt(dayFormat.format(calendar.getTime()));
+            int steps = 4000 + (d * 7919) % 8000;
+            store.putSteps(day, steps);
+            store.stepsSynced(day, steps);
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        store.close();
+
+        IntradaySteps intraday = new IntradaySteps();
+        for (int minute = 7 * 60; minute < 19 * 60; minute += 3) {
+            intraday.add(minute, 30 + minute % 80);
+        }
+        File intradayDir = new File(storeFile.getParentFile(), "intraday");
+        intradayDir.mkdirs();
+        FileOutputStream out = new FileOutputStream(new File(intradayDir, Integer.toString(today)));
+        try {
+            out.write(intraday.encode().getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    //median of a column over every run but the first
+    private static long warmMedian(long[][] times, int column) {
+        if (times.length < 2) {
+            return times[0][column];
+        }
+        long[] warm = new long[times.length - 1];
+        for (int run = 1; run < times.length; run++) {
+            warm[run - 1] = times[run][column];
+        }
+        Arrays.sort(warm);
+        return warm[warm.length / 2];
+    }
+}
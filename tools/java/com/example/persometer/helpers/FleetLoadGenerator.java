@@ -0,0 +1,160 @@
+package com.example.persometer.helpers;
+
+import com.example.persometer.models.IntradaySteps;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+//simulates a fleet of phones running the app's save logic (StepTally) against an InMemoryBackend
+//and reports the database load it causes, on a simulated clock so hours take seconds
+//usage: FleetLoadGenerator [--devices N] [--hours H] [--seed S]
+//FirebaseHelper logs through android.util.Log, so run it with the mockable android.jar
+//of the JVM unit tests (unitTests.returnDefaultValues) on the classpath
+public class FleetLoadGenerator {
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final double WALKING_SHARE = 0.25;       //share of the minutes a device is walking
+    private static final int STEPS_PER_MINUTE = 110;        //cadence while walking
+    private static final double BACKGROUND_PER_MINUTE = 4.0 / 60;  //the app goes to background 4 times per hour
+
+    private static class SimulatedClock implements Clock {
+        private long nowMs = 0;
+
+        @Override
+        public long nowMs() {
+            return nowMs;
+        }
+    }
+
+    //the paths of one device below a node of its own; the app's paths are global today,
+    //so without this every simulated phone would count into the same steps node
+    private static class DeviceBackend implements StorageBackend {
+        private final StorageBackend backend;
+        private final String prefix;
+
+        DeviceBackend(StorageBackend backend, String prefix) {
+            this.backend = backend;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void read(String path, SingleFlight.Callback<Integer> callback) {
+            backend.read(prefix + path, callback);
+        }
+
+        @Override
+        public void subscribe(String path, SingleFlight.Callback<Integer> callback) {
+            backend.subscribe(prefix + path, callback);
+        }
+
+        @Override
+        public void unsubscribe(String path, SingleFlight.Callback<Integer> callback) {
+            backend.unsubscribe(prefix + path, callback);
+        }
+
+        @Override
+        public void write(Map<String, Object> updates, WriteCallback callback) {
+            Map<String, Object> prefixed = new HashMap<>();
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                prefixed.put(prefix + update.getKey(), update.getValue());
+            }
+            backend.write(prefixed, callback);
+        }
+    }
+
+    //one phone: the counting and saving of StepCounterService, through the same StepTally, on a FirebaseHelper of its own
+    private static class Device {
+        private final FirebaseHelper FBHelper;
+        private final StepTally tally;
+
+        Device(StorageBackend backend, Clock clock) {
+            //no local store: it only adds traffic after offline periods, which are not simulated
+            FBHelper = new FirebaseHelper(null, backend, clock);
+            tally = new StepTally(FBHelper);
+        }
+
+        //StepCounterService.addSteps, the steps of a minute come in one delivery
+        void addSteps(int minute, int newSteps) {
+            tally.addSteps(minute % IntradaySteps.MINUTES, newSteps);
+        }
+
+        //the user leaves the app and comes back: MainActivity.onPause saves through StepCounterService.flushSteps,
+        //onStop flushes the queued values, onStart binds again and refreshes the count
+        void goToBackgroundAndBack() {
+            tally.save();
+            FBHelper.flush();
+            refresh();
+        }
+
+        //StepCounterService.refreshSteps
+        private void refresh() {
+            tally.refresh();
+            FBHelper.readSteps(new SingleFlight.Callback<Integer>() {
+                @Override
+                public void onResult(Integer value) {
+                    if (value != null) {
+                        tally.refresh(value);
+                    }
+                }
+
+                @Override
+                public void onError(String message) {
+                }
+            });
+        }
+
+        //StepCounterService.onDestroy
+        void destroy() {
+            tally.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        int devices = 1000, hours = 24;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--devices")) {
+                devices = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--hours")) {
+                hours = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+        }
+
+        Random random = new Random(seed);
+        InMemoryBackend backend = new InMemoryBackend();
+        SimulatedClock clock = new SimulatedClock();
+
+        Device[] fleet = new Device[devices];
+        for (int d = 0; d < devices; d++) {
+            fleet[d] = new Device(new DeviceBackend(backend, "devices/" + d + "/"), clock);
+        }
+
+        int minutes = hours * 60;
+        for (int minute = 0; minute < minutes; minute++) {
+            clock.nowMs += MINUTE_MS;
+            for (Device device : fleet) {
+                if (random.nextDouble() < WALKING_SHARE) {
+                    device.addSteps(minute, STEPS_PER_MINUTE - 10 + random.nextInt(21));
+                }
+                if (random.nextDouble() < BACKGROUND_PER_MINUTE) {
+                    device.goToBackgroundAndBack();
+                }
+            }
+        }
+        for (Device device : fleet) {
+            device.destroy();
+        }
+
+        double seconds = hours * 3600.0;
+        double deviceHours = (double) devices * hours;
+        System.out.println("devices: " + devices + ", simulated hours: " + hours);
+        System.out.printf("reads: %d (%.2f/s fleet, %.1f per device-hour)%n",
+                backend.getReads(), backend.getReads() / seconds, backend.getReads() / deviceHours);
+        System.out.printf("writes: %d (%.2f/s fleet, %.1f per device-hour)%n",
+                backend.getWrites(), backend.getWrites() / seconds, backend.getWrites() / deviceHours);
+        System.out.printf("bytes read: %.0f per device-hour%n", backend.getBytesRead() / deviceHours);
+        System.out.printf("bytes written: %.0f per device-hour%n", backend.getBytesWritten() / deviceHours);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.persometer.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//checks Histogram against the exact statistics of the recorded values: 4 threads record long-tailed
+//values at once, then the count, mean and max must be exact and every percentile must lie at or above
+//the exact one and within its bucket, at most 25% above it; DetectionMetrics, which records runs of
+//sensor intervals at once, must keep the mean and max of the intervals and the jitter exact too;
+//exits with 1 if any of it fails
+//usage: HistogramCheck [--values N] [--threads T]
+public class HistogramCheck {
+    private static final double[] PERCENTILES = {0.01, 0.1, 0.5, 0.9, 0.99, 0.999, 1};
+
+    public static void main(String[] args) throws InterruptedException {
+        int values = 1000000, threads = 4;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--values")) {
+                values = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        //log-normal, like latencies in nanoseconds: most around 50us, a few of several ms
+        final long[] recorded = new long[values];
+        Random random = new Random(42);
+        for (int i = 0; i < values; i++) {
+            recorded[i] = (long) Math.exp(Math.log(50000) + 1.5 * random.nextGaussian());
+        }
+
+        final Histogram histogram = new Histogram();
+        Thread[] workers = new Thread[threads];
+        final int perThread = (values + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            final int from = t * perThread, to = Math.min(values, from + perThread);
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        histogram.record(recorded[i]);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long[] sorted = recorded.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        boolean ok = compare("count", snapshot.getCount(), values)
+                & compare("max", snapshot.getMax(), sorted[values - 1])
+                & compare("mean", snapshot.getMean(), (double) sum / values);
+        for (double fraction : PERCENTILES) {
+            long exact = sorted[Math.max(0, (int) Math.ceil(fraction * values) - 1)];
+            long reported = snapshot.getPercentile(fraction);
+            boolean within = reported >= exact && reported <= exact + exact / 4 + 1;
+            System.out.printf("p%s: %d, exact %d%s%n", fraction * 100, reported, exact, within ? "" : " (OFF)");
+            ok &= within;
+        }
+        ok &= checkBatches(values);
+        if (!ok) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    //100Hz sensor timestamps with jitter and a few gaps, passed to DetectionMetrics in batches of 64
+    private static boolean checkBatches(int samples) {
+        Random random = new Random(7);
+        long[] timestampsNs = new long[samples];
+        long timeNs = 0;
+        for (int i = 0; i < samples; i++) {
+            timeNs += 10000000 + (long) (200000 * random.nextGaussian()) + (random.nextInt(1000) == 0 ? 50000000 : 0);
+            timestampsNs[i] = timeNs;
+        }
+        DetectionMetrics metrics = new DetectionMetrics();
+        for (int offset = 0; offset < samples; offset += 64) {
+            metrics.batch(timestampsNs, offset, Math.min(64, samples - offset), 0);
+        }
+
+        long intervalSum = 0, intervalMax = 0, jitterSum = 0, jitterMax = 0;
+        for (int i = 1; i < samples; i++) {
+            long intervalNs = timestampsNs[i] - timestampsNs[i - 1];
+            intervalSum += intervalNs;
+            intervalMax = Math.max(intervalMax, intervalNs);
+            if (i > 1) {
+                long jitterNs = Math.abs(intervalNs - (timestampsNs[i - 1] - timestampsNs[i - 2]));
+                jitterSum += jitterNs;
+                jitterMax = Math.max(jitterMax, jitterNs);
+            }
+        }
+        DetectionMetrics.Snapshot snapshot = metrics.snapshot();
+        return compare("batched interval mean", snapshot.intervals.getMean(), (double) intervalSum / (samples - 1))
+                & compare("batched interval max", snapshot.intervals.getMax(), intervalMax)
+                & compare("batched jitter mean", snapshot.jitter.getMean(), (double) jitterSum / (samples - 2))
+                & compare("batched jitter max", snapshot.jitter.getMax(), jitterMax);
+    }
+
+    private static boolean compare(String name, double reported, double exact) {
+        boolean same = Math.abs(reported - exact) <= 1e-9 * Math.abs(exact);
+        System.out.println(name + ": " + reported + (same ? "" : ", exact " + exact + " (OFF)"));
+        return same;
+    }
+}
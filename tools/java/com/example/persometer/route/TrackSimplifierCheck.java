@@ -0,0 +1,96 @@
+package com.example.persometer.route;
+
+import java.util.Random;
+
+//checks the bounds of TrackSimplifier on a long random walk: the drawn points may exceed maxPoints by
+//the raw tail only, the first and the newest point are always drawn, and every recorded point stays within
+//twice the final tolerance of the drawn line (each pass that doubled the tolerance may add its own error,
+//and the errors of all passes sum up to less than twice the last one); exits with 1 if any of it fails
+//usage: TrackSimplifierCheck [--points N] [--tolerance M] [--max P] [--seed S]
+public class TrackSimplifierCheck {
+    private static final int TAIL_POINTS = 64;   //raw points TrackSimplifier keeps before simplifying them
+    private static final double METERS_PER_E5 = 1.11195;
+    private static final int CHECKS = 10;   //the bounds are checked this often while the walk is added
+
+    public static void main(String[] args) {
+        int points = 100000, maxPoints = 500;
+        double toleranceM = 5;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--points")) {
+                points = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--tolerance")) {
+                toleranceM = Double.parseDouble(args[i + 1]);
+            } else if (args[i].equals("--max")) {
+                maxPoints = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+        }
+
+        //a walk through Madrid: about 1.4m between fixes, turning a little at every step
+        Random random = new Random(seed);
+        int[] lat = new int[points];
+        int[] lng = new int[points];
+        double y = TrackBuffer.toE5(40.4168), x = TrackBuffer.toE5(-3.7038), heading = 0;
+        double lngScale = Math.cos(Math.toRadians(40.4168));
+        for (int i = 0; i < points; i++) {
+            heading += random.nextGaussian() * 0.2;
+            y += Math.cos(heading) * 1.4 / METERS_PER_E5;
+            x += Math.sin(heading) * 1.4 / METERS_PER_E5 / lngScale;
+            lat[i] = (int) Math.round(y);
+            lng[i] = (int) Math.round(x);
+        }
+
+        TrackSimplifier simplifier = new TrackSimplifier(toleranceM, maxPoints);
+        boolean ok = true;
+        long start = System.nanoTime();
+        for (int i = 0; i < points; i++) {
+            simplifier.add(lat[i], lng[i]);
+            if ((i + 1) % (points / CHECKS) == 0 || i == points - 1) {
+                ok &= check(simplifier, lat, lng, i + 1, maxPoints, lngScale);
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+        System.out.printf("%d points in %.3f s with the checks%n", points, elapsedNs / 1e9);
+        if (!ok) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    //checks the drawn line after the first n points were added
+    private static boolean check(TrackSimplifier simplifier, int[] lat, int[] lng, int n, int maxPoints,
+                                 double lngScale) {
+        int drawn = simplifier.size();
+        double limitM = 2 * simplifier.getToleranceM();
+        double worstM = 0;
+        for (int i = 0; i < n; i++) {
+            worstM = Math.max(worstM, distanceM(simplifier, lat[i], lng[i], lngScale));
+        }
+        boolean ends = simplifier.latE5(0) == lat[0] && simplifier.lngE5(0) == lng[0]
+                && simplifier.latE5(drawn - 1) == lat[n - 1] && simplifier.lngE5(drawn - 1) == lng[n - 1];
+        boolean ok = drawn <= maxPoints + TAIL_POINTS && ends && worstM <= limitM + 0.01;
+        System.out.printf("%d points: %d drawn (max %d), tolerance %.0fm, farthest %.2fm (limit %.0fm)%s%s%n",
+                n, drawn, maxPoints + TAIL_POINTS, simplifier.getToleranceM(), worstM, limitM,
+                ends ? "" : ", ENDS MISSING", ok ? "" : ", FAILED");
+        return ok;
+    }
+
+    //meters from the point to the nearest segment of the drawn line
+    private static double distanceM(TrackSimplifier simplifier, int lat, int lng, double lngScale) {
+        double px = lng * lngScale, py = lat;
+        double best = Double.MAX_VALUE;
+        for (int j = 0; j + 1 < simplifier.size() || j == 0; j++) {
+            double ax = simplifier.lngE5(j) * lngScale, ay = simplifier.latE5(j);
+            int k = Math.min(j + 1, simplifier.size() - 1);
+            double dx = simplifier.lngE5(k) * lngScale - ax, dy = simplifier.latE5(k) - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+            double ex = px - ax - t * dx, ey = py - ay - t * dy;
+            best = Math.min(best, ex * ex + ey * ey);
+        }
+        return Math.sqrt(best) * METERS_PER_E5;
+    }
+}
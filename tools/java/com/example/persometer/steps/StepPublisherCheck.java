@@ -0,0 +1,114 @@
+package com.example.persometer.steps;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//checks StepPublisher under load: a million steps are published while two batch subscribers and a count
+//subscriber share a pool of 4 threads; every batch subscriber must get every step exactly once and in order,
+//the counts must only grow and end at the total, and no subscriber may be called on two threads at once;
+//exits with 1 if any of it fails
+//usage: StepPublisherCheck [--steps N] [--threads T]
+public class StepPublisherCheck {
+    private static final long TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int steps = 1000000, threads = 4;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--steps")) {
+                steps = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        StepPublisher publisher = new StepPublisher();
+        BatchCheck first = new BatchCheck();
+        BatchCheck second = new BatchCheck();
+        CountCheck counts = new CountCheck();
+        publisher.subscribeBatches(first, pool);
+        publisher.subscribeBatches(second, pool);
+        publisher.subscribeCount(counts, pool);
+
+        long start = System.nanoTime();
+        for (int i = 1; i <= steps; i++) {
+            publisher.step(i);   //the timestamp of step i is i, so the order is easy to check
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while ((first.received < steps || second.received < steps || counts.last < steps)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        long elapsedNs = System.nanoTime() - start;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.SECONDS);
+
+        boolean ok = first.check("batches 1", steps) & second.check("batches 2", steps) & counts.check(steps);
+        System.out.printf("%d steps on %d threads in %.3f s%n", steps, threads, elapsedNs / 1e9);
+        if (!ok) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static class BatchCheck implements StepPublisher.BatchSubscriber {
+        private final AtomicInteger inside = new AtomicInteger();
+        volatile int received = 0;   //steps received in order so far
+        volatile int deliveries = 0;
+        volatile boolean outOfOrder = false;
+        volatile boolean concurrent = false;
+
+        @Override
+        public void onSteps(long[] timestampsNs, int count) {
+            if (inside.incrementAndGet() != 1) {
+                concurrent = true;
+            }
+            int next = received;
+            for (int i = 0; i < count; i++) {
+                if (timestampsNs[i] != next + 1) {
+                    outOfOrder = true;
+                }
+                next++;
+            }
+            received = next;
+            deliveries++;
+            inside.decrementAndGet();
+        }
+
+        boolean check(String name, int steps) {
+            System.out.println(name + ": " + received + " steps in " + deliveries + " deliveries"
+                    + (outOfOrder ? ", OUT OF ORDER" : "") + (concurrent ? ", CONCURRENT" : ""));
+            return received == steps && !outOfOrder && !concurrent;
+        }
+    }
+
+    private static class CountCheck implements StepPublisher.CountSubscriber {
+        private final AtomicInteger inside = new AtomicInteger();
+        volatile long last = 0;
+        volatile int deliveries = 0;
+        volatile boolean backwards = false;
+        volatile boolean concurrent = false;
+
+        @Override
+        public void onCount(long totalSteps, long lastStepTimeNs) {
+            if (inside.incrementAndGet() != 1) {
+                concurrent = true;
+            }
+            if (totalSteps <= last) {
+                backwards = true;
+            }
+            last = totalSteps;
+            deliveries++;
+            inside.decrementAndGet();
+        }
+
+        boolean check(int steps) {
+            System.out.println("counts: last " + last + " in " + deliveries + " deliveries"
+                    + (backwards ? ", WENT BACK" : "") + (concurrent ? ", CONCURRENT" : ""));
+            return last == steps && !backwards && !concurrent;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.persometer.steps;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//SIMD reductions with the JDK's incubating Vector API, JVM only
+//SensorFilter picks this class up when it is on the classpath and the
+//jdk.incubator.vector module is enabled (--add-modules jdk.incubator.vector)
+class VectorReductions implements BulkReductions {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float sum(float[] array, int offset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            acc = acc.add(FloatVector.fromArray(SPECIES, array, offset + i));
+        }
+        float retval = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            retval += array[offset + i];
+        }
+        return retval;
+    }
+
+    @Override
+    public float sumOfSquares(float[] array, int offset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(SPECIES, array, offset + i);
+            acc = v.fma(v, acc);
+        }
+        float retval = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            retval += array[offset + i] * array[offset + i];
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.persometer.traces;
+
+import com.example.persometer.steps.StepEngines;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//recounts the steps of many recorded traces in parallel, one independent step engine per trace
+//usage: TraceBatchRunner [--threads N] [--engine window|ema|peak] <trace file or directory>...
+public class TraceBatchRunner {
+
+    private final ForkJoinPool pool;
+    private final String engine;
+
+    //engine is one of StepEngines.names(), anything else throws IllegalArgumentException before a trace is replayed
+    public TraceBatchRunner(int threads, String engine) {
+        if (!Arrays.asList(StepEngines.names()).contains(engine)) {
+            throw new IllegalArgumentException("Unknown step engine: " + engine);
+        }
+        pool = new ForkJoinPool(threads);
+        this.engine = engine;
+    }
+
+    //replays every trace, results[i] belongs to traces[i] and is null if the trace could not be read
+    public ReplayResult[] run(File[] traces, IOException[] errors) {
+        ReplayResult[] results = new ReplayResult[traces.length];
+        pool.invoke(new ReplayTask(engine, traces, results, errors, 0, traces.length));
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    //splits the traces in halves until a single trace is left, idle workers steal the other halves,
+    //so a few long traces do not keep the rest of the cores waiting
+    private static class ReplayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String engine;
+        private final File[] traces;
+        private final ReplayResult[] results;
+        private final IOException[] errors;
+        private final int from, to;
+
+        ReplayTask(String engine, File[] traces, ReplayResult[] results, IOException[] errors, int from, int to) {
+            this.engine = engine;
+            this.traces = traces;
+            this.results = results;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 0) {
+                return;   //no traces at all
+            }
+            if (to - from == 1) {
+                try {
+                    results[from] = new TraceReplayer(engine).replay(traces[from]);
+                } catch (IOException e) {
+                    errors[from] = e;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReplayTask(engine, traces, results, errors, from, middle),
+                    new ReplayTask(engine, traces, results, errors, middle, to));
+        }
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String engine = StepEngines.WINDOW;
+        List<File> traces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--engine") && i + 1 < args.length) {
+                engine = args[++i];
+            } else {
+                File file = new File(args[i]);
+                if (file.isDirectory()) {
+                    collect(file, traces);
+                } else {
+                    traces.add(file);   //files named explicitly are replayed whatever their name
+                }
+            }
+        }
+        if (traces.isEmpty()) {
+            System.err.println("usage: TraceBatchRunner [--threads N] [--engine window|ema|peak] <trace file or directory>...");
+            System.exit(1);
+        }
+        if (!Arrays.asList(StepEngines.names()).contains(engine)) {
+            System.err.println("unknown engine: " + engine + ", expected one of " + Arrays.toString(StepEngines.names()));
+            System.exit(1);
+        }
+
+        File[] files = traces.toArray(new File[0]);
+        IOException[] errors = new IOException[files.length];
+        TraceBatchRunner runner = new TraceBatchRunner(threads, engine);
+
+        long start = System.nanoTime();
+        ReplayResult[] results = runner.run(files, errors);
+        long elapsedNs = System.nanoTime() - start;
+        runner.shutdown();
+
+        long samples = 0, steps = 0;
+        int failed = 0;
+        System.out.println("trace\tsteps\tsamples");
+        for (int i = 0; i < files.length; i++) {
+            if (results[i] == null) {
+                failed++;
+                System.err.println(files[i] + "\terror: " + errors[i].getMessage());
+                continue;
+            }
+            samples += results[i].getSamples();
+            steps += results[i].getStepCount();
+            System.out.println(files[i] + "\t" + results[i].getStepCount() + "\t" + results[i].getSamples());
+        }
+
+        System.out.println();
+        System.out.println("traces: " + (files.length - failed) + " (" + failed + " failed)");
+        System.out.println("threads: " + threads);
+        System.out.println("engine: " + engine);
+        System.out.println("steps: " + steps);
+        System.out.println("samples: " + samples);
+        System.out.printf("elapsed: %.3f s%n", elapsedNs / 1e9);
+        System.out.printf("throughput: %.0f samples/s%n", samples * 1e9 / elapsedNs);
+    }
+
+    //adds every .trace file below the directory, in a stable order
+    private static void collect(File dir, List<File> traces) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, traces);
+            } else if (child.getName().endsWith(".trace")) {
+                traces.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.persometer.traces;
+
+import com.example.persometer.steps.StepEngine;
+import com.example.persometer.steps.StepEngines;
+import com.example.persometer.steps.StepListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+//checks the trace replay on an hour of synthetic walking at 500Hz: the replayed steps must equal those of
+//live per-sample input, and a warm replay must take less than a second; exits with 1 if either fails
+//usage: TraceReplayCheck [--minutes M] [--rate Hz]
+public class TraceReplayCheck {
+    private static final long LIMIT_NS_PER_HOUR = 1000000000L;
+    private static final int WARM_RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int minutes = 60, rateHz = 500;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--minutes")) {
+                minutes = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--rate")) {
+                rateHz = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        File file = File.createTempFile("replaycheck", ".trace");
+        file.deleteOnExit();
+        long[] live = writeWalk(file, rateHz, minutes * 60 * rateHz);
+
+        TraceReplayer replayer = new TraceReplayer();
+        ReplayResult cold = replayer.replay(file);
+        long bestNs = Long.MAX_VALUE;
+        for (int run = 0; run < WARM_RUNS; run++) {
+            bestNs = Math.min(bestNs, replayer.replay(file).getElapsedNs());
+        }
+        double limitNs = LIMIT_NS_PER_HOUR * minutes / 60.0;
+
+        boolean sameSteps = Arrays.equals(live, cold.getStepTimestampsNs());
+        System.out.println("samples: " + cold.getSamples() + " (" + minutes + " min at " + rateHz + "Hz)");
+        System.out.println("steps: replayed " + cold.getStepCount() + ", live " + live.length
+                + (sameSteps ? " (same)" : " (DIFFERENT)"));
+        System.out.printf("replay: cold %.3f s, warm %.3f s, limit %.3f s%n",
+                cold.getElapsedNs() / 1e9, bestNs / 1e9, limitNs / 1e9);
+        if (!sameSteps || bestNs >= limitNs) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    //writes a walk at 1.8 steps per second into the trace and returns the steps per-sample input finds in it
+    private static long[] writeWalk(File file, int rateHz, int samples) throws IOException {
+        final long[] steps = new long[samples];
+        final int[] count = new int[1];
+        StepEngine detector = StepEngines.create(StepEngines.WINDOW);
+        detector.registerListener(new StepListener() {
+            @Override
+            public void step(long timeNs) {
+                steps[count[0]++] = timeNs;
+            }
+        });
+
+        Random random = new Random(42);
+        long periodNs = 1000000000L / rateHz;
+        TraceWriter writer = new TraceWriter(file);
+        try {
+            for (int i = 0; i < samples; i++) {
+                double phase = 2 * Math.PI * 1.8 * i / rateHz;
+                long timeNs = i * periodNs;
+                float x = (float) (1.5 * Math.sin(phase / 2) + 0.3 * random.nextGaussian());
+                float y = (float) (0.5 * Math.cos(phase / 2) + 0.3 * random.nextGaussian());
+                float z = (float) (9.81 + 3 * Math.sin(phase) + 0.3 * random.nextGaussian());
+                writer.write(timeNs, x, y, z);
+                detector.updateAccel(timeNs, x, y, z);
+            }
+        } finally {
+            writer.close();
+        }
+        return Arrays.copyOf(steps, count[0]);
+    }
+}